@@ -0,0 +1,150 @@
+package steganosaurus.Benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Builds the random carriers and payloads the benchmarks run against. Random
+ * pixels are the worst case for PNG compression, which keeps encode timings
+ * honest.
+ */
+final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * Parses a carrier size written as WIDTHxHEIGHT.
+     *
+     * @param size the size, e.g. "1920x1080"
+     * @return the width and height
+     */
+    static int[] parseSize(String size) {
+        int split = size.indexOf('x');
+        return new int[] { Integer.parseInt(size.substring(0, split)), Integer.parseInt(size.substring(split + 1)) };
+    }
+
+    /**
+     * Parses an image type name into its BufferedImage constant.
+     *
+     * @param type INT_ARGB, 3BYTE_BGR or BYTE_INDEXED
+     * @return the image type
+     */
+    static int parseType(String type) {
+        switch (type) {
+            case "INT_ARGB":
+                return BufferedImage.TYPE_INT_ARGB;
+            case "3BYTE_BGR":
+                return BufferedImage.TYPE_3BYTE_BGR;
+            case "BYTE_INDEXED":
+                return BufferedImage.TYPE_BYTE_INDEXED;
+            default:
+                throw new IllegalArgumentException("Unknown image type: " + type);
+        }
+    }
+
+    /**
+     * Creates an image of random pixels.
+     *
+     * @param size the size, e.g. "1920x1080"
+     * @param type the image type name
+     * @return the image
+     */
+    static BufferedImage image(String size, String type) {
+        int[] dimensions = parseSize(size);
+        BufferedImage image = new BufferedImage(dimensions[0], dimensions[1], parseType(type));
+        Random random = new Random(size.hashCode());
+        int[] row = new int[dimensions[0]];
+        for (int y = 0; y < dimensions[1]; y++) {
+            for (int x = 0; x < row.length; x++)
+                row[x] = random.nextInt();
+            image.setRGB(0, y, row.length, 1, row, 0, row.length);
+        }
+        return image;
+    }
+
+    /**
+     * Creates an ARGB image that compresses like a photo carrying a full
+     * payload: smooth gradients with a little sensor noise, and random low bits
+     * where the payload was embedded at the default density.
+     *
+     * @param size the size, e.g. "1920x1080"
+     * @return the image
+     */
+    static BufferedImage photo(String size) {
+        int[] dimensions = parseSize(size);
+        int width = dimensions[0];
+        BufferedImage image = new BufferedImage(width, dimensions[1], BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(size.hashCode());
+        int[] row = new int[width];
+        for (int y = 0; y < dimensions[1]; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = clamp(128 + (int) (100 * Math.sin(x / 90.0)) + random.nextInt(9));
+                int green = clamp(128 + (int) (90 * Math.cos(y / 70.0)) + random.nextInt(9));
+                int blue = (x + y) / 12 & 0xFF;
+                int pixel = 0xFF000000 | red << 16 | green << 8 | blue;
+                row[x] = (pixel & 0xFCFCFCFC) | (random.nextInt() & 0x03030303);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    /**
+     * Creates an array of random pixels.
+     *
+     * @param length the number of pixels
+     * @return the pixels
+     */
+    static int[] pixels(int length) {
+        int[] pixels = new int[length];
+        Random random = new Random(length);
+        for (int i = 0; i < length; i++)
+            pixels[i] = random.nextInt();
+        return pixels;
+    }
+
+    /**
+     * Creates a random payload.
+     *
+     * @param length the payload length
+     * @return the payload
+     */
+    static byte[] payload(int length) {
+        byte[] payload = new byte[length];
+        new Random(length).nextBytes(payload);
+        return payload;
+    }
+
+    private static int clamp(int channel) {
+        return Math.max(0, Math.min(255, channel));
+    }
+
+    /**
+     * Creates a temporary directory that is deleted, with its files, on exit.
+     *
+     * @return the directory
+     * @throws IOException if the directory cannot be created
+     */
+    static File tempDirectory() throws IOException {
+        File directory = Files.createTempDirectory("steganosaurus-jmh").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    /**
+     * Deletes a temporary directory and the files in it.
+     *
+     * @param directory the directory
+     */
+    static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        directory.delete();
+    }
+}
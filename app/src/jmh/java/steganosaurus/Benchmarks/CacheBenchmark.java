@@ -0,0 +1,70 @@
+package steganosaurus.Benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import steganosaurus.Backend.CarrierCache;
+import steganosaurus.Backend.CarrierFormat;
+import steganosaurus.Backend.SteganException;
+
+/**
+ * Reading a carrier again: decoding it from disk against copying it out of a
+ * warm {@link CarrierCache}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CacheBenchmark {
+
+    @Param({ "1920x1080", "3840x2160" })
+    public String size;
+
+    private File directory;
+    private File carrier;
+    private CarrierCache cache;
+
+    @Setup
+    public void setup() throws IOException, SteganException {
+        ImageIO.setUseCache(false);
+        directory = BenchmarkImages.tempDirectory();
+        carrier = new File(directory, "carrier.png");
+        ImageIO.write(BenchmarkImages.photo(size), "png", carrier);
+        cache = new CarrierCache(CarrierCache.DEFAULT_BUDGET, false);
+        cache.read(carrier);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkImages.delete(directory);
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException, SteganException {
+        return CarrierFormat.readCarrier(carrier);
+    }
+
+    @Benchmark
+    public BufferedImage cached() throws IOException, SteganException {
+        return cache.read(carrier);
+    }
+}
@@ -0,0 +1,89 @@
+package steganosaurus.Benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import steganosaurus.Backend.ArrayPayloadSource;
+import steganosaurus.Backend.CarrierDecoder;
+import steganosaurus.Backend.CarrierEncoder;
+import steganosaurus.Backend.CarrierHeader;
+import steganosaurus.Backend.CarrierSlice;
+import steganosaurus.Backend.Density;
+import steganosaurus.Backend.PayloadCipher;
+import steganosaurus.Backend.PayloadCodec;
+import steganosaurus.Backend.PayloadSource;
+import steganosaurus.Backend.SteganException;
+
+/**
+ * A whole carrier end to end: decode, embed and write a PNG, then read it back
+ * and extract the slice. The carrier is filled completely.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CarrierBenchmark {
+
+    @Param({ "256x256", "1024x1024", "1920x1080", "3840x2160", "7680x4320" })
+    public String size;
+
+    @Param({ "INT_ARGB", "3BYTE_BGR", "BYTE_INDEXED" })
+    public String type;
+
+    private File directory;
+    private CarrierSlice slice;
+    private byte[] headerBytes;
+    private CarrierHeader header;
+    private PayloadSource payload;
+    private File encoded;
+
+    @Setup
+    public void setup() throws IOException, SteganException {
+        ImageIO.setUseCache(false);
+        directory = BenchmarkImages.tempDirectory();
+        File carrier = new File(directory, "carrier.png");
+        ImageIO.write(BenchmarkImages.image(size, type), "png", carrier);
+        int[] dimensions = BenchmarkImages.parseSize(size);
+        int length = dimensions[0] * dimensions[1] - CarrierHeader.SIZE;
+        payload = new ArrayPayloadSource(BenchmarkImages.payload(length));
+        slice = new CarrierSlice(carrier, 0, 0, length);
+        header = new CarrierHeader(new byte[32], "payload", "bin", length, 0, 0, length, Density.DEFAULT,
+                PayloadCodec.NONE, PayloadCipher.NONE);
+        headerBytes = header.toBytes();
+        encoded = CarrierEncoder.encodeCarrier(slice, headerBytes, payload);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        payload.close();
+        BenchmarkImages.delete(directory);
+    }
+
+    @Benchmark
+    public File encode() throws IOException, SteganException {
+        return CarrierEncoder.encodeCarrier(slice, headerBytes, payload);
+    }
+
+    @Benchmark
+    public byte[] extract() throws IOException, SteganException {
+        return CarrierDecoder.extractSlice(encoded, header);
+    }
+}
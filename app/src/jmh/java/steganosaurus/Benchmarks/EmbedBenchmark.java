@@ -0,0 +1,72 @@
+package steganosaurus.Benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import steganosaurus.Backend.CarrierHeader;
+import steganosaurus.Backend.Density;
+import steganosaurus.Backend.Embedder;
+import steganosaurus.Backend.PayloadCipher;
+import steganosaurus.Backend.PayloadCodec;
+import steganosaurus.Backend.PayloadCursor;
+import steganosaurus.Backend.SliceExtractor;
+
+/**
+ * The per-pixel embed and extract loops on decoded pixels, with no image I/O,
+ * at each packing density. Every carrier is filled completely, so the score
+ * divided by the pixel count is the per-pixel cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbedBenchmark {
+
+    @Param({ "256x256", "1024x1024", "1920x1080", "3840x2160", "7680x4320" })
+    public String size;
+
+    @Param({ "ARGB_2", "ARGB_1", "ARGB_4", "RGB_1", "RGB_4" })
+    public String density;
+
+    private Density packing;
+    private int[] pixels;
+    private byte[] header;
+    private byte[] payload;
+    private byte[] extracted;
+
+    @Setup
+    public void setup() {
+        int[] dimensions = BenchmarkImages.parseSize(size);
+        pixels = BenchmarkImages.pixels(dimensions[0] * dimensions[1]);
+        packing = Density.valueOf(density);
+        payload = BenchmarkImages.payload((int) packing.capacity(pixels.length - CarrierHeader.SIZE));
+        header = new CarrierHeader(new byte[32], "payload", "bin", payload.length, 0, 0, payload.length, packing,
+                PayloadCodec.NONE, PayloadCipher.NONE).toBytes();
+        extracted = new byte[payload.length];
+    }
+
+    @Benchmark
+    public int embed() {
+        return Embedder.embed(pixels, new PayloadCursor(header, ByteBuffer.wrap(payload), packing));
+    }
+
+    @Benchmark
+    public int extract() {
+        return new SliceExtractor(packing).extract(pixels, CarrierHeader.SIZE, pixels.length, extracted, 0,
+                extracted.length);
+    }
+}
@@ -0,0 +1,74 @@
+package steganosaurus.Benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import steganosaurus.Backend.CarrierFormat;
+import steganosaurus.Backend.SteganException;
+
+/**
+ * Writing an encoded carrier to disk in each built-in output format, and
+ * decoding it again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class FormatBenchmark {
+
+    @Param({ "1920x1080", "3840x2160" })
+    public String size;
+
+    @Param({ "png", "bmp", "tiff" })
+    public String format;
+
+    private File directory;
+    private File output;
+    private BufferedImage argb;
+    private CarrierFormat carrierFormat;
+
+    @Setup
+    public void setup() throws IOException {
+        // Keep ImageIO from spilling to a disk cache while encoding
+        ImageIO.setUseCache(false);
+        directory = BenchmarkImages.tempDirectory();
+        argb = BenchmarkImages.photo(size);
+        carrierFormat = CarrierFormat.forName(format);
+        output = new File(directory, "carrier." + carrierFormat.getExtension());
+        carrierFormat.write(argb, output);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkImages.delete(directory);
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        return carrierFormat.write(argb, output);
+    }
+
+    @Benchmark
+    public BufferedImage read() throws IOException, SteganException {
+        return CarrierFormat.readCarrier(output);
+    }
+}
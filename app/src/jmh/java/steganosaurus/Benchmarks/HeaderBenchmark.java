@@ -0,0 +1,76 @@
+package steganosaurus.Benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import steganosaurus.Backend.CarrierHeader;
+import steganosaurus.Backend.Density;
+import steganosaurus.Backend.PayloadCipher;
+import steganosaurus.Backend.PayloadCodec;
+import steganosaurus.Backend.SteganException;
+
+/**
+ * Building, serialising and parsing headers, and reading them back from
+ * carriers of each size without decoding the whole image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderBenchmark {
+
+    @Param({ "256x256", "1920x1080", "7680x4320" })
+    public String size;
+
+    private final byte[] idHash = BenchmarkImages.payload(32);
+    private byte[] header;
+    private File directory;
+    private File carrier;
+
+    @Setup
+    public void setup() throws IOException {
+        header = create();
+        directory = BenchmarkImages.tempDirectory();
+        carrier = new File(directory, "carrier.png");
+        ImageIO.write(BenchmarkImages.image(size, "INT_ARGB"), "png", carrier);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkImages.delete(directory);
+    }
+
+    @Benchmark
+    public byte[] create() {
+        return new CarrierHeader(idHash, "payload", "bin", 1L << 30, 7, 1L << 20, 1L << 20,
+                Density.DEFAULT, PayloadCodec.NONE, PayloadCipher.NONE).toBytes();
+    }
+
+    @Benchmark
+    public CarrierHeader parse() {
+        return CarrierHeader.parse(header);
+    }
+
+    @Benchmark
+    public CarrierHeader read() throws IOException, SteganException {
+        return CarrierHeader.read(carrier);
+    }
+}
@@ -0,0 +1,90 @@
+package steganosaurus.Benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import steganosaurus.Backend.CarrierHeader;
+import steganosaurus.Backend.Density;
+import steganosaurus.Backend.Embedder;
+import steganosaurus.Backend.MappedPayloadSource;
+import steganosaurus.Backend.PayloadCipher;
+import steganosaurus.Backend.PayloadCodec;
+import steganosaurus.Backend.PayloadCursor;
+import steganosaurus.Backend.PayloadDigest;
+import steganosaurus.Backend.PayloadSource;
+
+/**
+ * How hashing and embedding scale with the payload, from 1 KB to 100 MB. The
+ * payload is read through a mapped file as a real job would, and embedded into
+ * as many 4K carriers as it needs. Both should grow linearly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PayloadBenchmark {
+
+    // Pixels in a 4K carrier
+    private static final int CARRIER_PIXELS = 3840 * 2160;
+
+    @Param({ "1024", "1048576", "16777216", "104857600" })
+    public int payloadSize;
+
+    private final PayloadDigest digest = new PayloadDigest();
+    private File directory;
+    private File file;
+    private PayloadSource payload;
+    private int[] pixels;
+    private byte[] header;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkImages.tempDirectory();
+        file = new File(directory, "payload.bin");
+        Files.write(file.toPath(), BenchmarkImages.payload(payloadSize));
+        payload = new MappedPayloadSource(file.toPath());
+        pixels = BenchmarkImages.pixels(CARRIER_PIXELS);
+        header = new CarrierHeader(new byte[32], "payload", "bin", payloadSize, 0, 0, payloadSize,
+                Density.DEFAULT, PayloadCodec.NONE, PayloadCipher.NONE).toBytes();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        payload.close();
+        BenchmarkImages.delete(directory);
+    }
+
+    @Benchmark
+    public byte[] hash() throws IOException {
+        return digest.hash(file.toPath());
+    }
+
+    @Benchmark
+    public long embed() throws IOException {
+        // Reuses one carrier's pixels for every slice, image I/O is measured elsewhere
+        long embedded = 0;
+        int sliceLength = CARRIER_PIXELS - CarrierHeader.SIZE;
+        for (long offset = 0; offset < payloadSize; offset += sliceLength) {
+            int length = (int) Math.min(sliceLength, payloadSize - offset);
+            embedded += Embedder.embed(pixels, new PayloadCursor(header, payload.slice(offset, length)));
+        }
+        return embedded;
+    }
+}
@@ -0,0 +1,102 @@
+package steganosaurus.Benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import steganosaurus.Backend.CarrierPixels;
+import steganosaurus.Backend.PngRowReader;
+import steganosaurus.Backend.PngRowWriter;
+import steganosaurus.Backend.SteganException;
+
+/**
+ * PNG decode and encode through ImageIO and through the streaming row reader
+ * and writer, across carrier sizes and source image types. Decoding includes
+ * the conversion to ARGB pixels that embedding needs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PngBenchmark {
+
+    @Param({ "256x256", "1024x1024", "1920x1080", "3840x2160", "7680x4320" })
+    public String size;
+
+    @Param({ "INT_ARGB", "3BYTE_BGR", "BYTE_INDEXED" })
+    public String type;
+
+    private File directory;
+    private File carrier;
+    private BufferedImage argb;
+
+    @Setup
+    public void setup() throws IOException {
+        // Keep ImageIO from spilling to a disk cache while encoding
+        ImageIO.setUseCache(false);
+        directory = BenchmarkImages.tempDirectory();
+        carrier = new File(directory, "carrier.png");
+        BufferedImage image = BenchmarkImages.image(size, type);
+        ImageIO.write(image, "png", carrier);
+        argb = CarrierPixels.normalize(image);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkImages.delete(directory);
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException, SteganException {
+        return CarrierPixels.read(carrier);
+    }
+
+    @Benchmark
+    public int decodeRows() throws IOException {
+        try (PngRowReader png = new PngRowReader(new FileInputStream(carrier))) {
+            int[] row = new int[png.getWidth()];
+            int checksum = 0;
+            while (png.readRow(row))
+                checksum += row[0];
+            return checksum;
+        }
+    }
+
+    @Benchmark
+    public boolean encode() throws IOException {
+        return ImageIO.write(argb, "png", OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void encodeRows() throws IOException {
+        int width = argb.getWidth();
+        int[] pixels = CarrierPixels.pixels(argb);
+        int[] row = new int[width];
+        try (PngRowWriter png = new PngRowWriter(OutputStream.nullOutputStream(), width, argb.getHeight())) {
+            for (int y = 0; y < argb.getHeight(); y++) {
+                System.arraycopy(pixels, y * width, row, 0, width);
+                png.writeRow(row);
+            }
+        }
+    }
+}
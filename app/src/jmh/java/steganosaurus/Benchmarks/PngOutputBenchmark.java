@@ -0,0 +1,70 @@
+package steganosaurus.Benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import steganosaurus.Backend.CarrierPixels;
+import steganosaurus.Backend.PngOptions;
+import steganosaurus.Backend.PngRowWriter;
+
+/**
+ * Writing an encoded carrier across PNG compression levels and row filters.
+ * {@link PngBenchmark#encode()} times the JDK writer on the same sizes. Carriers
+ * look like photos with a full payload rather than random pixels, since filters
+ * only matter on images with structure.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PngOutputBenchmark {
+
+    @Param({ "1920x1080", "3840x2160" })
+    public String size;
+
+    @Param({ "FAST", "DEFAULT", "MAX" })
+    public String level;
+
+    @Param({ "NONE", "SUB", "UP", "AVERAGE", "PAETH", "ADAPTIVE" })
+    public String filter;
+
+    private BufferedImage argb;
+    private PngOptions options;
+
+    @Setup
+    public void setup() {
+        // Keep ImageIO from spilling to a disk cache while encoding
+        ImageIO.setUseCache(false);
+        argb = BenchmarkImages.photo(size);
+        options = new PngOptions(PngOptions.Level.valueOf(level), PngOptions.Filter.valueOf(filter));
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        int width = argb.getWidth();
+        int[] pixels = CarrierPixels.pixels(argb);
+        try (PngRowWriter png = new PngRowWriter(OutputStream.nullOutputStream(), width, argb.getHeight(),
+                options)) {
+            for (int y = 0; y < argb.getHeight(); y++)
+                png.writeRow(pixels, y * width);
+        }
+    }
+}
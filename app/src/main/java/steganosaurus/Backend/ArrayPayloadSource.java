@@ -0,0 +1,36 @@
+package steganosaurus.Backend;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Payload source over a byte array already in memory.
+ */
+public class ArrayPayloadSource implements PayloadSource {
+
+    private final byte[] payload;
+
+    /**
+     * Constructs an ArrayPayloadSource.
+     *
+     * @param payload the payload bytes, not copied
+     */
+    public ArrayPayloadSource(byte[] payload) {
+        this.payload = payload;
+    }
+
+    @Override
+    public long length() {
+        return payload.length;
+    }
+
+    @Override
+    public ByteBuffer slice(long offset, int length) {
+        if (offset < 0 || length < 0 || offset > payload.length - length)
+            throw new IndexOutOfBoundsException("Invalid payload slice: " + offset + "+" + length);
+        return ByteBuffer.wrap(payload, (int) offset, length).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,76 @@
+package steganosaurus.Backend;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR events the backend emits. They cost nothing unless a flight recording
+ * enables them, e.g. with {@code -XX:StartFlightRecording} or
+ * {@code jcmd <pid> JFR.start}.
+ */
+final class BackendEvents {
+
+    private BackendEvents() {
+    }
+
+    @Name("steganosaurus.Stage")
+    @Label("Stage")
+    @Category("Steganosaurus")
+    @Description("One stage of a job, for one carrier or for the whole payload")
+    @StackTrace(false)
+    static final class StageEvent extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Carrier")
+        String carrier;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("steganosaurus.Carrier")
+    @Label("Carrier")
+    @Category("Steganosaurus")
+    @Description("A carrier embedded into or extracted from, from admission to completion")
+    @StackTrace(false)
+    static final class CarrierEvent extends Event {
+
+        @Label("Carrier")
+        String carrier;
+
+        @Label("Pixels")
+        long pixels;
+
+        @Label("Slice Bytes")
+        @DataAmount
+        long sliceBytes;
+
+        @Label("Streamed")
+        boolean streamed;
+    }
+
+    @Name("steganosaurus.Job")
+    @Label("Job")
+    @Category("Steganosaurus")
+    @Description("A whole embed or extract job")
+    @StackTrace(false)
+    static final class JobEvent extends Event {
+
+        @Label("Mode")
+        String mode;
+
+        @Label("Carriers")
+        int carriers;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+}
@@ -0,0 +1,82 @@
+package steganosaurus.Backend;
+
+/**
+ * Receives the state changes of a {@link MainBackend}. The GUI shows them in
+ * its labels, while headless callers can ignore them or log them. Every method
+ * does nothing by default, so listeners only override what they need.
+ *
+ * Status changes made by a running job arrive on its worker thread.
+ */
+public interface BackendListener {
+
+    /**
+     * Called when the status of the backend changes.
+     *
+     * @param status the new status (e.g., "Idle", "Running", "Done")
+     */
+    default void setStatus(String status) {
+    }
+
+    /**
+     * Called when the mode of the backend changes.
+     *
+     * @param mode the new mode (e.g., "Encrypt", "Decrypt")
+     */
+    default void setMode(String mode) {
+    }
+
+    /**
+     * Called when the file to hide changes.
+     *
+     * @param fileName the name of the file
+     */
+    default void setFileName(String fileName) {
+    }
+
+    /**
+     * Called when the size of the file to hide changes.
+     *
+     * @param fileSize the size of the file in bytes
+     */
+    default void setFileSize(long fileSize) {
+    }
+
+    /**
+     * Called when the total capacity of the carriers changes.
+     *
+     * @param totalBytes the bytes the carriers can hold
+     */
+    default void setTotalBytes(long totalBytes) {
+    }
+
+    /**
+     * Called when the bytes still needed to hide the file change.
+     *
+     * @param neededBytes the bytes the carriers are short by
+     */
+    default void setNeededBytes(long neededBytes) {
+    }
+
+    /**
+     * Called when a carrier is added.
+     *
+     * @param fileName the name of the carrier
+     * @param fileSize the size of the carrier in bytes
+     */
+    default void addCarrier(String fileName, long fileSize) {
+    }
+
+    /**
+     * Called when a carrier is removed.
+     *
+     * @param index the index the carrier had
+     */
+    default void removeCarrier(int index) {
+    }
+
+    /**
+     * Called when every carrier is removed.
+     */
+    default void clearCarriers() {
+    }
+}
@@ -0,0 +1,153 @@
+package steganosaurus.Backend;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Timers and counters for every job run in the process: the time, run count and
+ * bytes of each {@link Stage}, and totals of jobs, carriers and pixels. Every
+ * backend records into the same instance, which is registered as an MXBean
+ * under {@value #OBJECT_NAME} for JConsole and other JMX clients.
+ *
+ * The same stages, carriers and jobs are also recorded as JFR events in the
+ * {@code Steganosaurus} category, so a flight recording shows them next to GC
+ * and I/O activity.
+ */
+public final class BackendMetrics implements BackendMetricsMXBean {
+
+    // The name the metrics are registered under
+    public static final String OBJECT_NAME = "steganosaurus:type=BackendMetrics";
+
+    private static final BackendMetrics INSTANCE = register(new BackendMetrics());
+
+    private final Map<Stage, LongAdder> stageNanos = new EnumMap<Stage, LongAdder>(Stage.class);
+    private final Map<Stage, LongAdder> stageCounts = new EnumMap<Stage, LongAdder>(Stage.class);
+    private final Map<Stage, LongAdder> stageBytes = new EnumMap<Stage, LongAdder>(Stage.class);
+    private final LongAdder jobsStarted = new LongAdder();
+    private final LongAdder jobsFailed = new LongAdder();
+    private final LongAdder carriers = new LongAdder();
+    private final LongAdder pixels = new LongAdder();
+    private volatile long lastJobNanos = 0;
+
+    private BackendMetrics() {
+        // Filled once, so the maps are only read afterwards
+        for (Stage stage : Stage.values()) {
+            stageNanos.put(stage, new LongAdder());
+            stageCounts.put(stage, new LongAdder());
+            stageBytes.put(stage, new LongAdder());
+        }
+    }
+
+    /**
+     * Gets the metrics shared by every backend in the process.
+     *
+     * @return the metrics
+     */
+    public static BackendMetrics get() {
+        return INSTANCE;
+    }
+
+    @Override
+    public long getJobsStarted() {
+        return jobsStarted.sum();
+    }
+
+    @Override
+    public long getJobsFailed() {
+        return jobsFailed.sum();
+    }
+
+    @Override
+    public long getLastJobMillis() {
+        return lastJobNanos / 1_000_000;
+    }
+
+    @Override
+    public long getCarriersProcessed() {
+        return carriers.sum();
+    }
+
+    @Override
+    public long getPixelsProcessed() {
+        return pixels.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStageMillis() {
+        Map<String, Long> millis = new LinkedHashMap<String, Long>();
+        for (Map.Entry<Stage, LongAdder> entry : stageNanos.entrySet())
+            millis.put(entry.getKey().name(), entry.getValue().sum() / 1_000_000);
+        return millis;
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        return sums(stageCounts);
+    }
+
+    @Override
+    public Map<String, Long> getStageBytes() {
+        return sums(stageBytes);
+    }
+
+    @Override
+    public void reset() {
+        for (Stage stage : Stage.values()) {
+            stageNanos.get(stage).reset();
+            stageCounts.get(stage).reset();
+            stageBytes.get(stage).reset();
+        }
+        jobsStarted.reset();
+        jobsFailed.reset();
+        carriers.reset();
+        pixels.reset();
+        lastJobNanos = 0;
+    }
+
+    // #region Helper functions
+
+    void record(Stage stage, long nanos, long bytes) {
+        stageNanos.get(stage).add(nanos);
+        stageCounts.get(stage).increment();
+        stageBytes.get(stage).add(bytes);
+    }
+
+    void jobStarted() {
+        jobsStarted.increment();
+    }
+
+    void jobFinished(boolean succeeded, long nanos) {
+        if (!succeeded)
+            jobsFailed.increment();
+        lastJobNanos = nanos;
+    }
+
+    void carrierDone(long carrierPixels) {
+        carriers.increment();
+        pixels.add(carrierPixels);
+    }
+
+    private static Map<String, Long> sums(Map<Stage, LongAdder> adders) {
+        Map<String, Long> sums = new LinkedHashMap<String, Long>();
+        for (Map.Entry<Stage, LongAdder> entry : adders.entrySet())
+            sums.put(entry.getKey().name(), entry.getValue().sum());
+        return sums;
+    }
+
+    private static BackendMetrics register(BackendMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // Already registered by another copy of the classes, which keeps its own metrics
+        }
+        return metrics;
+    }
+
+    // #endregion
+}
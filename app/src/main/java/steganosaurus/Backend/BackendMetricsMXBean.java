@@ -0,0 +1,71 @@
+package steganosaurus.Backend;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link BackendMetrics}. Totals cover every job run in the
+ * process since it started or the metrics were reset.
+ */
+public interface BackendMetricsMXBean {
+
+    /**
+     * Gets the number of jobs started.
+     *
+     * @return the job count
+     */
+    long getJobsStarted();
+
+    /**
+     * Gets the number of jobs that failed or were cancelled.
+     *
+     * @return the failed job count
+     */
+    long getJobsFailed();
+
+    /**
+     * Gets the duration of the last finished job.
+     *
+     * @return the duration in milliseconds, 0 if no job has finished
+     */
+    long getLastJobMillis();
+
+    /**
+     * Gets the number of carriers embedded into or extracted from.
+     *
+     * @return the carrier count
+     */
+    long getCarriersProcessed();
+
+    /**
+     * Gets the number of carrier pixels embedded into or extracted from.
+     *
+     * @return the pixel count
+     */
+    long getPixelsProcessed();
+
+    /**
+     * Gets the time spent in each {@link Stage}, summed over every thread.
+     *
+     * @return the milliseconds spent per stage name
+     */
+    Map<String, Long> getStageMillis();
+
+    /**
+     * Gets how many times each {@link Stage} ran.
+     *
+     * @return the run count per stage name
+     */
+    Map<String, Long> getStageCounts();
+
+    /**
+     * Gets the bytes each {@link Stage} processed.
+     *
+     * @return the byte count per stage name
+     */
+    Map<String, Long> getStageBytes();
+
+    /**
+     * Sets every counter back to zero.
+     */
+    void reset();
+}
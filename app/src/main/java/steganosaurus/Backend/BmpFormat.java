@@ -0,0 +1,33 @@
+package steganosaurus.Backend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes carriers as uncompressed 32-bit BMPs through {@link BmpRowWriter}.
+ * Files are several times larger than PNGs but cost almost nothing to encode,
+ * for pipelines where throughput matters more than disk space.
+ */
+public final class BmpFormat implements StreamableFormat {
+
+    @Override
+    public String getName() {
+        return "bmp";
+    }
+
+    @Override
+    public String getExtension() {
+        return "bmp";
+    }
+
+    @Override
+    public CarrierWriter open(OutputStream output, int width, int height) throws IOException {
+        return new BmpRowWriter(output, width, height);
+    }
+
+    @Override
+    public long capacity(long pixels, Density density) {
+        // The file size has to fit the 32-bit size field
+        return pixels + CarrierHeader.SIZE > BmpRowWriter.MAX_PIXELS ? 0 : density.capacity(pixels);
+    }
+}
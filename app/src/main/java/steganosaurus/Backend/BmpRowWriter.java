@@ -0,0 +1,105 @@
+package steganosaurus.Backend;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Writes an uncompressed 32-bit BMP one scanline at a time. Rows are stored top
+ * down with a V4 header whose bit masks include alpha, so every channel the
+ * payload may use survives and each row is a straight copy of its ARGB pixels.
+ */
+public class BmpRowWriter implements CarrierWriter {
+
+    // Size of the buffer in front of the stream
+    private static final int BUFFER_SIZE = 1 << 16;
+    // File header plus BITMAPV4HEADER
+    static final int HEADER_SIZE = 14 + 108;
+    // Bytes per ARGB pixel
+    private static final int BYTES_PER_PIXEL = 4;
+    // Largest pixel count whose file size fits the 32-bit size field
+    static final long MAX_PIXELS = (0xFFFFFFFFL - HEADER_SIZE) / BYTES_PER_PIXEL;
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final byte[] row;
+    private final IntBuffer rowPixels;
+    private int rowsWritten = 0;
+    private long encodeNanos = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructs a BmpRowWriter and writes the BMP headers.
+     *
+     * @param output the stream to write to, closed along with this writer
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @throws IOException if the stream cannot be written
+     */
+    public BmpRowWriter(OutputStream output, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Invalid BMP dimensions: " + width + "x" + height);
+        if ((long) width * height > MAX_PIXELS)
+            throw new IllegalArgumentException("Image is too large for a BMP: " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        out = new BufferedOutputStream(output, BUFFER_SIZE);
+        row = new byte[width * BYTES_PER_PIXEL];
+        rowPixels = ByteBuffer.wrap(row).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        long imageSize = (long) width * height * BYTES_PER_PIXEL;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'B').put((byte) 'M');
+        header.putInt((int) (HEADER_SIZE + imageSize));
+        header.putInt(0); // reserved
+        header.putInt(HEADER_SIZE); // offset of the pixels
+        header.putInt(108); // size of the V4 header
+        header.putInt(width);
+        header.putInt(-height); // negative for top-down rows
+        header.putShort((short) 1); // planes
+        header.putShort((short) 32); // bits per pixel
+        header.putInt(3); // BI_BITFIELDS
+        header.putInt((int) imageSize);
+        header.putInt(2835).putInt(2835); // 72 DPI
+        header.putInt(0).putInt(0); // palette
+        header.putInt(0x00FF0000).putInt(0x0000FF00).putInt(0x000000FF).putInt(0xFF000000);
+        header.putInt(0x73524742); // sRGB colour space
+        // The remaining endpoints and gamma are unused for sRGB
+        out.write(header.array());
+    }
+
+    @Override
+    public void writeRow(int[] argb, int offset) throws IOException {
+        if (rowsWritten >= height)
+            throw new IOException("All " + height + " BMP rows have already been written.");
+        long started = System.nanoTime();
+        // Little endian ARGB ints are exactly the BGRA bytes the masks describe
+        rowPixels.clear();
+        rowPixels.put(argb, offset, width);
+        out.write(row);
+        rowsWritten++;
+        encodeNanos += System.nanoTime() - started;
+    }
+
+    @Override
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (rowsWritten < height)
+                throw new IOException("Only " + rowsWritten + " of " + height + " BMP rows were written.");
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+}
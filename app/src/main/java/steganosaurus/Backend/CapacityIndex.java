@@ -0,0 +1,61 @@
+package steganosaurus.Backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of carrier capacities, keyed by path and stored with the modification
+ * time they were read at. Capacities come from
+ * {@link ChunkPlanner#capacityOf(File)}, which reads only the image dimensions,
+ * and are only recomputed when a carrier changes on disk, replacing the stale
+ * entry.
+ */
+public class CapacityIndex {
+
+    private final Map<String, Entry> capacities = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Gets the number of pixels a carrier has after the header, from the cache
+     * if the carrier has not changed since it was last read.
+     *
+     * @param carrier the carrier image
+     * @return the number of pixels left after the header, which may be zero or
+     *         negative for tiny images
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public long capacityOf(File carrier) throws IOException, SteganException {
+        String key = carrier.getAbsolutePath();
+        long modified = carrier.lastModified();
+        Entry cached = capacities.get(key);
+        if (cached != null && cached.modified == modified)
+            return cached.capacity;
+        long capacity = ChunkPlanner.capacityOf(carrier);
+        capacities.put(key, new Entry(modified, capacity));
+        return capacity;
+    }
+
+    /**
+     * Clears every cached capacity.
+     */
+    public void clear() {
+        capacities.clear();
+    }
+
+    // #region Helper functions
+
+    // A capacity and the modification time of the carrier it was read from
+    private static final class Entry {
+        private final long modified;
+        private final long capacity;
+
+        private Entry(long modified, long capacity) {
+            this.modified = modified;
+            this.capacity = capacity;
+        }
+    }
+
+    // #endregion
+}
@@ -0,0 +1,284 @@
+package steganosaurus.Backend;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of decoded carriers, so running a job again against the same carriers
+ * copies their pixels instead of decoding every image from scratch. Entries are
+ * keyed by path and checked against the modification time and size of the file,
+ * so a carrier that changes on disk is decoded again.
+ *
+ * The cache holds the normalised ARGB pixels of each carrier, bounded by a byte
+ * budget with the least recently used carriers evicted first. With soft
+ * references the garbage collector may also drop entries when the heap runs
+ * low. Callers always get their own copy, as embedding writes to the pixels.
+ */
+public class CarrierCache {
+
+    // Default budget, a quarter of the maximum heap
+    public static final long DEFAULT_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+    // Bytes per cached ARGB pixel
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final long budget;
+    private final boolean soft;
+    // In access order, so the first entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Constructs a CarrierCache.
+     *
+     * @param budget the maximum bytes of pixels held at once
+     * @param soft   whether entries are held through soft references, which the
+     *               garbage collector may clear under memory pressure
+     */
+    public CarrierCache(long budget, boolean soft) {
+        if (budget < 1)
+            throw new IllegalArgumentException("Cache budget must be positive: " + budget);
+        this.budget = budget;
+        this.soft = soft;
+    }
+
+    /**
+     * Checks whether a carrier is cached and unchanged on disk, without counting
+     * a hit or a miss.
+     *
+     * @param carrier the carrier image
+     * @return true if reading the carrier would not decode it
+     */
+    public synchronized boolean contains(File carrier) {
+        Entry entry = entries.get(carrier.getAbsolutePath());
+        return entry != null && entry.matches(carrier) && entry.pixels() != null;
+    }
+
+    /**
+     * Gets a decoded carrier, decoding and caching it on a miss.
+     *
+     * @param carrier the carrier image
+     * @return a decoded ARGB copy the caller may modify
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public BufferedImage read(File carrier) throws IOException, SteganException {
+        return read(carrier, null);
+    }
+
+    /**
+     * Gets a decoded carrier, decoding it from the contents of its file on a
+     * miss.
+     *
+     * @param carrier  the carrier image
+     * @param contents the bytes of the carrier file, or null to read the file
+     * @return a decoded ARGB copy the caller may modify
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public BufferedImage read(File carrier, byte[] contents) throws IOException, SteganException {
+        // Stamp before decoding, so a change made meanwhile is seen on the next read
+        long modified = carrier.lastModified();
+        long length = carrier.length();
+        Entry entry = lookup(carrier);
+        // Copied outside the lock, and only if the collector has not cleared it since
+        int[] pixels = entry == null ? null : entry.pixels();
+        if (pixels != null)
+            return entry.copy(pixels);
+        BufferedImage image = contents == null ? CarrierFormat.readCarrier(carrier)
+                : CarrierFormat.readCarrier(carrier, contents);
+        // Carriers larger than the whole budget are not cached
+        if ((long) image.getWidth() * image.getHeight() * BYTES_PER_PIXEL <= budget)
+            put(carrier, new Entry(modified, length, image, soft));
+        return image;
+    }
+
+    /**
+     * Drops every cached carrier. The statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Gets the hit, miss and eviction counts and the current size of the cache.
+     *
+     * @return a snapshot of the statistics
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, entries.size(), bytes, budget);
+    }
+
+    /**
+     * A snapshot of the statistics of a {@link CarrierCache}.
+     */
+    public static final class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long bytes;
+        private final long budget;
+
+        private Stats(long hits, long misses, long evictions, int entries, long bytes, long budget) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.budget = budget;
+        }
+
+        /**
+         * Gets the number of reads served from the cache.
+         *
+         * @return the hit count
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Gets the number of reads that had to decode the carrier.
+         *
+         * @return the miss count
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Gets the number of carriers evicted to stay within the budget or
+         * cleared by the garbage collector.
+         *
+         * @return the eviction count
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Gets the number of carriers cached.
+         *
+         * @return the entry count
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * Gets the bytes of pixels cached.
+         *
+         * @return the cached bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Gets the maximum bytes of pixels cached at once.
+         *
+         * @return the budget in bytes
+         */
+        public long getBudget() {
+            return budget;
+        }
+
+        @Override
+        public String toString() {
+            return "hits " + hits + ", misses " + misses + ", evictions " + evictions + ", " + entries
+                    + " carriers in " + (bytes >> 20) + " of " + (budget >> 20) + " MiB";
+        }
+    }
+
+    // #region Helper functions
+
+    // Finds an unchanged cached carrier, or returns null on a miss
+    private synchronized Entry lookup(File carrier) {
+        String key = carrier.getAbsolutePath();
+        Entry entry = entries.get(key);
+        int[] pixels = entry == null ? null : entry.pixels();
+        if (pixels == null || !entry.matches(carrier)) {
+            if (entry != null)
+                remove(key, entry, pixels == null);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry;
+    }
+
+    private synchronized void put(File carrier, Entry entry) {
+        String key = carrier.getAbsolutePath();
+        Entry previous = entries.remove(key);
+        if (previous != null)
+            bytes -= previous.bytes;
+        // Soft entries the collector cleared no longer hold memory
+        Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+        while (oldest.hasNext()) {
+            Entry cached = oldest.next().getValue();
+            if (cached.pixels() == null || bytes + entry.bytes > budget) {
+                oldest.remove();
+                bytes -= cached.bytes;
+                evictions++;
+            }
+        }
+        entries.put(key, entry);
+        bytes += entry.bytes;
+    }
+
+    private void remove(String key, Entry entry, boolean evicted) {
+        entries.remove(key);
+        bytes -= entry.bytes;
+        if (evicted)
+            evictions++;
+    }
+
+    // The pixels of one carrier and the file they were decoded from
+    private static final class Entry {
+
+        private final long modified;
+        private final long length;
+        private final int width;
+        private final int height;
+        private final long bytes;
+        private final int[] strong;
+        private final SoftReference<int[]> softPixels;
+
+        Entry(long modified, long length, BufferedImage image, boolean soft) {
+            this.modified = modified;
+            this.length = length;
+            width = image.getWidth();
+            height = image.getHeight();
+            bytes = (long) width * height * BYTES_PER_PIXEL;
+            int[] pixels = CarrierPixels.pixels(image).clone();
+            strong = soft ? null : pixels;
+            softPixels = soft ? new SoftReference<int[]>(pixels) : null;
+        }
+
+        int[] pixels() {
+            return strong != null ? strong : softPixels.get();
+        }
+
+        boolean matches(File carrier) {
+            return carrier.lastModified() == modified && carrier.length() == length;
+        }
+
+        BufferedImage copy(int[] pixels) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            System.arraycopy(pixels, 0, CarrierPixels.pixels(image), 0, pixels.length);
+            return image;
+        }
+    }
+
+    // #endregion
+}
@@ -0,0 +1,369 @@
+package steganosaurus.Backend;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipException;
+
+/**
+ * Recovers hidden data from a set of carriers. Headers are read first, by
+ * decoding only the rows that hold them, so carriers can be put in file id
+ * order and checked for gaps before any full image is decoded.
+ *
+ * Slices are then extracted in parallel and streamed to the output file in
+ * order, through the decryption and codec recorded in the headers and a
+ * digest of the decoded bytes. Encrypted chunks are checked as soon as their
+ * bytes arrive, so a tampered carrier fails without reading the ones after it.
+ * Only the slices that are in flight are held in memory, bounded by the same kind
+ * of memory budget as {@link CarrierEncoder}. PNG carriers too large for the
+ * budget are streamed row by row straight into the output instead.
+ */
+public class CarrierDecoder {
+
+    // Size of the buffer in front of the output file
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int parallelism;
+    private final long memoryBudget;
+    private final PayloadCipher cipher;
+    private final CarrierCache cache;
+    private final CapacityIndex capacityIndex;
+
+    /**
+     * Constructs a CarrierDecoder for unencrypted hidden data.
+     *
+     * @param parallelism  the maximum number of carriers decoded at once
+     * @param memoryBudget the maximum estimated bytes of decoded images and
+     *                     extracted slices held at once
+     */
+    public CarrierDecoder(int parallelism, long memoryBudget) {
+        this(parallelism, memoryBudget, null);
+    }
+
+    /**
+     * Constructs a CarrierDecoder.
+     *
+     * @param parallelism  the maximum number of carriers decoded at once
+     * @param memoryBudget the maximum estimated bytes of decoded images and
+     *                     extracted slices held at once
+     * @param cipher       the cipher holding the passphrase, or null if the hidden
+     *                     data is not encrypted
+     */
+    public CarrierDecoder(int parallelism, long memoryBudget, PayloadCipher cipher) {
+        this(parallelism, memoryBudget, cipher, null);
+    }
+
+    /**
+     * Constructs a CarrierDecoder that decodes carriers through a cache, so
+     * extracting again does not decode them again.
+     *
+     * @param parallelism  the maximum number of carriers decoded at once
+     * @param memoryBudget the maximum estimated bytes of decoded images and
+     *                     extracted slices held at once
+     * @param cipher       the cipher holding the passphrase, or null if the hidden
+     *                     data is not encrypted
+     * @param cache        the cache of decoded carriers, or null to decode every
+     *                     carrier
+     */
+    public CarrierDecoder(int parallelism, long memoryBudget, PayloadCipher cipher, CarrierCache cache) {
+        this(parallelism, memoryBudget, cipher, cache, new CapacityIndex());
+    }
+
+    /**
+     * Constructs a CarrierDecoder that looks carrier sizes up in an index, so
+     * carriers already sized are not opened again for it.
+     *
+     * @param parallelism   the maximum number of carriers decoded at once
+     * @param memoryBudget  the maximum estimated bytes of decoded images and
+     *                      extracted slices held at once
+     * @param cipher        the cipher holding the passphrase, or null if the
+     *                      hidden data is not encrypted
+     * @param cache         the cache of decoded carriers, or null to decode
+     *                      every carrier
+     * @param capacityIndex the index of carrier capacities
+     */
+    public CarrierDecoder(int parallelism, long memoryBudget, PayloadCipher cipher, CarrierCache cache,
+            CapacityIndex capacityIndex) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        if (memoryBudget < 1)
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+        this.parallelism = parallelism;
+        this.memoryBudget = memoryBudget;
+        this.cipher = cipher;
+        this.cache = cache;
+        this.capacityIndex = capacityIndex;
+    }
+
+    /**
+     * Extracts the hidden file from the carriers and writes it to the output
+     * directory with a {@code decrypted_} prefix.
+     *
+     * @param carriers        the carriers holding the hidden file, in any order
+     * @param outputDirectory the directory to write the hidden file to
+     * @param listener        the listener to report finished carriers to, or null
+     * @return the written file
+     * @throws IOException     if a carrier cannot be read or the output cannot be
+     *                         written
+     * @throws SteganException if the carriers do not hold a complete, intact file
+     */
+    public File decode(List<File> carriers, File outputDirectory, ProgressListener listener)
+            throws IOException, SteganException {
+        if (carriers.isEmpty())
+            throw new SteganException("No carrier files have been added.");
+        // Read every header and put the carriers in sequence
+        List<Entry> entries = new ArrayList<Entry>();
+        for (File carrier : carriers) {
+            long pixels = capacityIndex.capacityOf(carrier) + MainBackend.HEADER_SIZE;
+            boolean streamed = StreamingCarrier.shouldStream(carrier, pixels, memoryBudget);
+            StageTimer timer = StageTimer.start(Stage.HEADER, carrier);
+            CarrierHeader header = CarrierHeader.read(carrier);
+            timer.stop(CarrierHeader.SIZE);
+            entries.add(new Entry(carrier, header, pixels, streamed));
+        }
+        entries.sort(Comparator.comparingInt(entry -> entry.header.getFileId()));
+        validate(entries);
+
+        CarrierHeader first = entries.get(0).header;
+        if (first.isEncrypted() && cipher == null)
+            throw new SteganException("The hidden data is encrypted, a passphrase is needed.");
+        // Encrypted data carries its name sealed with it, known once decrypted
+        AtomicReference<String> name = new AtomicReference<String>(first.getFullName());
+        File output;
+        // Written beside the output and moved over it once complete, so a failed
+        // extraction never touches an existing file
+        Path partial = Files.createTempFile(outputDirectory.toPath(), "decrypted_", ".part");
+        boolean complete = false;
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(partial), BUFFER_SIZE)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            OutputStream sink;
+            if (first.isEncrypted()) {
+                // The hash of encrypted data covers the slices as embedded. It is
+                // compared once every slice has been decrypted, the chunk tags are
+                // what catch a changed slice as it streams through
+                sink = new DigestOutputStream(cipher.decrypting(first.getCodec().decoding(file), name::set), digest);
+            } else {
+                // Slices go through the codec, the hash covers what comes out of it
+                sink = first.getCodec().decoding(new DigestOutputStream(file, digest));
+            }
+            ProgressTracker tracker = new ProgressTracker(listener, first.getByteLength(), entries.size());
+            extractInOrder(entries, sink, tracker);
+            // Closing the chain flushes and closes the file before it is moved
+            sink.close();
+            if (!Arrays.equals(digest.digest(), first.getIdHash()))
+                throw new SteganException("Hidden data in the carriers does not match its hash.");
+            output = new File(outputDirectory, "decrypted_" + safeName(name.get()));
+            moveIntoPlace(partial, output.toPath());
+            complete = true;
+        } catch (PayloadCipher.TamperedException e) {
+            throw new SteganException("The passphrase is wrong or the hidden data in the carriers was changed.", e);
+        } catch (ZipException e) {
+            throw new SteganException("Hidden data in the carriers is corrupted.", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        } finally {
+            // Never leave a partial or corrupted file behind
+            if (!complete)
+                Files.deleteIfExists(partial);
+        }
+        return output;
+    }
+
+    /**
+     * Extracts a single slice from a carrier.
+     *
+     * @param carrier the carrier image
+     * @param header  the header read from the carrier
+     * @return the slice bytes
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public static byte[] extractSlice(File carrier, CarrierHeader header) throws IOException, SteganException {
+        return extractSlice(carrier, header, null);
+    }
+
+    /**
+     * Extracts a single slice from a carrier, decoding it through a cache.
+     *
+     * @param carrier the carrier image
+     * @param header  the header read from the carrier
+     * @param cache   the cache of decoded carriers, or null to decode the carrier
+     * @return the slice bytes
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public static byte[] extractSlice(File carrier, CarrierHeader header, CarrierCache cache)
+            throws IOException, SteganException {
+        StageTimer decode = StageTimer.start(Stage.DECODE, carrier);
+        BufferedImage image = cache == null ? CarrierFormat.readCarrier(carrier) : cache.read(carrier);
+        decode.stop(carrier.length());
+        StageTimer extract = StageTimer.start(Stage.EXTRACT, carrier);
+        int[] pixels = CarrierPixels.pixels(image);
+        byte[] slice = new byte[(int) header.getSliceLength()];
+        int extracted = new SliceExtractor(header.getDensity()).extract(pixels, MainBackend.HEADER_SIZE,
+                pixels.length, slice, 0, slice.length);
+        extract.stop(extracted);
+        if (extracted < slice.length)
+            throw new SteganException("Carrier file " + carrier.getName() + " ends before its slice.");
+        return slice;
+    }
+
+    // #region Helper functions
+
+    // Keeps a name read from an untrusted header to a single plain file name
+    private static String safeName(String name) {
+        StringBuilder safe = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '/' && c != '\\' && c != ':' && !Character.isISOControl(c))
+                safe.append(c);
+        }
+        return safe.length() == 0 ? "hidden" : safe.toString();
+    }
+
+    private static void moveIntoPlace(Path partial, Path output) throws IOException {
+        try {
+            Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Checks that the carriers form one complete, gap-free sequence
+    private static void validate(List<Entry> entries) throws SteganException {
+        CarrierHeader first = entries.get(0).header;
+        long expectedOffset = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            CarrierHeader header = entry.header;
+            if (!Arrays.equals(header.getIdHash(), first.getIdHash())
+                    || header.getByteLength() != first.getByteLength() || header.getCodec() == null
+                    || first.getCodec() == null || header.getCodec().getId() != first.getCodec().getId()
+                    || header.getEncryption() != first.getEncryption())
+                throw new SteganException("Carrier file " + entry.carrier.getName()
+                        + " belongs to a different hidden file.");
+            if (header.getFileId() != i)
+                throw new SteganException("Carrier with file id " + i + " is missing.");
+            if (header.getDensity() == null || !PayloadCipher.isKnown(header.getEncryption())
+                    || header.getSliceOffset() != expectedOffset
+                    || header.getSliceLength() < 0
+                    || header.getSliceLength() > header.getDensity().capacity(entry.pixels - MainBackend.HEADER_SIZE))
+                throw new SteganException("Carrier file " + entry.carrier.getName() + " has a corrupted header.");
+            expectedOffset += header.getSliceLength();
+        }
+        if (expectedOffset != first.getByteLength())
+            throw new SteganException("Carriers hold " + expectedOffset + " of " + first.getByteLength()
+                    + " bytes, some carriers are missing.");
+    }
+
+    // Extracts slices on the pool and writes them in file id order as they complete
+    private void extractInOrder(List<Entry> entries, OutputStream sink, ProgressTracker tracker)
+            throws IOException, SteganException {
+        // Permits are counted in KiB so large budgets still fit in an int
+        int budgetKiB = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBudget >> 10));
+        Semaphore admission = new Semaphore(budgetKiB);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, entries.size()));
+        List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+        int[] costs = new int[entries.size()];
+        BackendEvents.CarrierEvent[] events = new BackendEvents.CarrierEvent[entries.size()];
+        try {
+            int submitted = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                // Admit as many carriers as the budget allows. Permits are only
+                // returned once a slice is written, so when nothing is in flight
+                // the next carrier is admitted unconditionally.
+                while (submitted < entries.size()) {
+                    Entry entry = entries.get(submitted);
+                    // Decoded image, its ARGB copy and the extracted slice
+                    long bytes = entry.streamed ? CarrierEncoder.STREAMING_COST : entry.pixels * 9;
+                    int cost = (int) Math.min(budgetKiB, Math.max(1, bytes >> 10));
+                    if (submitted == i)
+                        admission.acquire(cost);
+                    else if (!admission.tryAcquire(cost))
+                        break;
+                    costs[submitted] = cost;
+                    events[submitted] = new BackendEvents.CarrierEvent();
+                    events[submitted].begin();
+                    // Streamed carriers are extracted straight into the sink when their turn comes
+                    futures.add(entry.streamed ? null
+                            : pool.submit(() -> extractSlice(entry.carrier, entry.header, cache)));
+                    submitted++;
+                }
+                Entry entry = entries.get(i);
+                if (entry.streamed) {
+                    StageTimer timer = StageTimer.start(Stage.STREAM, entry.carrier);
+                    StreamingCarrier.extract(entry.carrier, entry.header, sink);
+                    timer.stop(entry.header.getSliceLength());
+                } else {
+                    sink.write(futures.get(i).get());
+                }
+                admission.release(costs[i]);
+                tracker.carrierDone(entry.header.getSliceLength());
+                BackendMetrics.get().carrierDone(entry.pixels);
+                commit(events[i], entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SteganException("Decoding was interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof SteganException)
+                throw (SteganException) cause;
+            throw new SteganException("Unexpected error while decoding carriers.", cause);
+        } finally {
+            for (Future<byte[]> future : futures)
+                if (future != null)
+                    future.cancel(true);
+            pool.shutdownNow();
+        }
+    }
+
+    private static void commit(BackendEvents.CarrierEvent event, Entry entry) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.carrier = entry.carrier.getPath();
+            event.pixels = entry.pixels;
+            event.sliceBytes = entry.header.getSliceLength();
+            event.streamed = entry.streamed;
+            event.commit();
+        }
+    }
+
+    // A carrier paired with its header, pixel count and how it is read
+    private static final class Entry {
+        private final File carrier;
+        private final CarrierHeader header;
+        private final long pixels;
+        private final boolean streamed;
+
+        private Entry(File carrier, CarrierHeader header, long pixels, boolean streamed) {
+            this.carrier = carrier;
+            this.header = header;
+            this.pixels = pixels;
+            this.streamed = streamed;
+        }
+    }
+
+    // #endregion
+}
@@ -0,0 +1,461 @@
+package steganosaurus.Backend;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Decodes, embeds and writes carriers on a bounded worker pool. Once the payload
+ * has been sliced every carrier is independent, so carriers are processed
+ * concurrently up to a parallelism cap.
+ *
+ * Each carrier passes through three stages so disk and CPU work overlap: its
+ * file is read into memory on a virtual thread, decoded, embedded and encoded
+ * back into memory on the worker pool, and written out on a virtual thread.
+ * Workers never wait on the disk, and at most two carriers per worker are in
+ * flight at once, on top of the memory budget.
+ *
+ * Decoded images are large (a 24 MP photo is close to 100 MB once decoded), so
+ * on top of the thread cap a carrier is only admitted once its estimated
+ * decoded size fits in the memory budget. PNG carriers too large for the budget
+ * are streamed through {@link StreamingCarrier} instead of decoded, when the
+ * output format is a {@link StreamableFormat}. The output of each carrier does not
+ * depend on scheduling, so files are byte-identical to a sequential run.
+ */
+public class CarrierEncoder {
+
+    // Default worker count, one per core
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    // Default budget for decoded images, half of the maximum heap
+    public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 2;
+    // Estimated bytes held per pixel while a carrier is in flight: the decoded
+    // image plus its ARGB copy
+    static final int BYTES_PER_PIXEL = 8;
+    // Estimated bytes held while a carrier is streamed row by row
+    static final long STREAMING_COST = 1 << 20;
+    // Carriers in flight per worker: one being embedded, one being read or written
+    static final int PIPELINE_DEPTH = 2;
+    // Upper bound on the bytes per pixel of an encoded carrier held in memory,
+    // reserved from the budget though the buffer only grows as far as it needs
+    private static final int ENCODED_BYTES_PER_PIXEL = 4;
+    // Starting size of the buffer of a cached carrier, which has no file size to go by
+    private static final int INITIAL_ENCODED_SIZE = 1 << 20;
+    // Largest file held in memory between stages, larger ones are read and
+    // written by the worker itself
+    private static final long MAX_BUFFERED = 1 << 30;
+
+    private final int parallelism;
+    private final long memoryBudget;
+    private final CarrierFormat format;
+    private final File outputDirectory;
+    private final CarrierCache cache;
+    private final CapacityIndex capacityIndex;
+
+    /**
+     * Constructs a CarrierEncoder that writes carriers as PNGs with the default
+     * options.
+     *
+     * @param parallelism  the maximum number of carriers processed at once
+     * @param memoryBudget the maximum estimated bytes of decoded images held at
+     *                     once
+     */
+    public CarrierEncoder(int parallelism, long memoryBudget) {
+        this(parallelism, memoryBudget, new PngFormat(PngOptions.DEFAULT));
+    }
+
+    /**
+     * Constructs a CarrierEncoder.
+     *
+     * @param parallelism  the maximum number of carriers processed at once
+     * @param memoryBudget the maximum estimated bytes of decoded images held at
+     *                     once
+     * @param format       the format the carriers are written in
+     */
+    public CarrierEncoder(int parallelism, long memoryBudget, CarrierFormat format) {
+        this(parallelism, memoryBudget, format, null);
+    }
+
+    /**
+     * Constructs a CarrierEncoder that writes every carrier into one directory.
+     *
+     * @param parallelism     the maximum number of carriers processed at once
+     * @param memoryBudget    the maximum estimated bytes of decoded images held
+     *                        at once
+     * @param format          the format the carriers are written in
+     * @param outputDirectory the directory to write carriers to, or null to
+     *                        write each next to its original
+     */
+    public CarrierEncoder(int parallelism, long memoryBudget, CarrierFormat format, File outputDirectory) {
+        this(parallelism, memoryBudget, format, outputDirectory, null);
+    }
+
+    /**
+     * Constructs a CarrierEncoder that decodes carriers through a cache, so a
+     * job run again does not decode them again.
+     *
+     * @param parallelism     the maximum number of carriers processed at once
+     * @param memoryBudget    the maximum estimated bytes of decoded images held
+     *                        at once
+     * @param format          the format the carriers are written in
+     * @param outputDirectory the directory to write carriers to, or null to
+     *                        write each next to its original
+     * @param cache           the cache of decoded carriers, or null to decode
+     *                        every carrier
+     */
+    public CarrierEncoder(int parallelism, long memoryBudget, CarrierFormat format, File outputDirectory,
+            CarrierCache cache) {
+        this(parallelism, memoryBudget, format, outputDirectory, cache, new CapacityIndex());
+    }
+
+    /**
+     * Constructs a CarrierEncoder that looks carrier sizes up in the index the
+     * slices were planned with, so no carrier is opened again to size it.
+     *
+     * @param parallelism     the maximum number of carriers processed at once
+     * @param memoryBudget    the maximum estimated bytes of decoded images held
+     *                        at once
+     * @param format          the format the carriers are written in
+     * @param outputDirectory the directory to write carriers to, or null to
+     *                        write each next to its original
+     * @param cache           the cache of decoded carriers, or null to decode
+     *                        every carrier
+     * @param capacityIndex   the index of carrier capacities
+     */
+    public CarrierEncoder(int parallelism, long memoryBudget, CarrierFormat format, File outputDirectory,
+            CarrierCache cache, CapacityIndex capacityIndex) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        if (memoryBudget < 1)
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+        this.parallelism = parallelism;
+        this.memoryBudget = memoryBudget;
+        this.format = format;
+        this.outputDirectory = outputDirectory;
+        this.cache = cache;
+        this.capacityIndex = capacityIndex;
+    }
+
+    /**
+     * Encodes every slice into its carrier and writes the results next to the
+     * carriers, or into the output directory, with an {@code encrypted_} prefix.
+     * Each finished carrier is reported with its processing and image encode
+     * times.
+     *
+     * @param slices   the planned slices
+     * @param headers  the header of each slice, in the same order as slices
+     * @param payload  the source of the whole payload
+     * @param listener the listener to report finished carriers to, or null
+     * @return the written files, in the same order as slices
+     * @throws IOException     if a carrier cannot be read or written
+     * @throws SteganException if a carrier is not a readable image, two carriers
+     *                         would be written to the same output, or the run is
+     *                         interrupted
+     */
+    public List<File> encode(List<CarrierSlice> slices, List<byte[]> headers, PayloadSource payload,
+            ProgressListener listener) throws IOException, SteganException {
+        return encode(slices, headers, payload, listener, null);
+    }
+
+    // Encodes as above, recording each written carrier in the job's journal
+    List<File> encode(List<CarrierSlice> slices, List<byte[]> headers, PayloadSource payload,
+            ProgressListener listener, JobJournal journal) throws IOException, SteganException {
+        // Carriers that differ only in their extension would overwrite each other
+        Map<File, File> outputs = new HashMap<File, File>();
+        for (CarrierSlice slice : slices) {
+            File carrier = slice.getCarrier();
+            File other = outputs.putIfAbsent(outputFile(carrier, format, outputDirectory).getAbsoluteFile(), carrier);
+            if (other != null)
+                throw new SteganException("Carrier files " + other.getName() + " and " + carrier.getName()
+                        + " would be written to the same output.");
+        }
+        long bytesTotal = 0;
+        for (CarrierSlice slice : slices)
+            bytesTotal += slice.getLength();
+        ProgressTracker tracker = new ProgressTracker(listener, bytesTotal, slices.size());
+        // Permits are counted in KiB so large budgets still fit in an int
+        int budgetKiB = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBudget >> 10));
+        Semaphore admission = new Semaphore(budgetKiB);
+        int workers = Math.min(parallelism, Math.max(1, slices.size()));
+        Semaphore inFlight = new Semaphore(workers * PIPELINE_DEPTH);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+        List<Future<File>> futures = new ArrayList<Future<File>>();
+        // Set by the first carrier that fails, the job is lost so no more are admitted
+        AtomicBoolean failed = new AtomicBoolean();
+        try {
+            for (int i = 0; i < slices.size() && !failed.get(); i++) {
+                CarrierSlice slice = slices.get(i);
+                byte[] header = headers.get(i);
+                File carrier = slice.getCarrier();
+                File encryptedFile = outputFile(carrier, format, outputDirectory);
+                long pixels = capacityIndex.capacityOf(carrier) + MainBackend.HEADER_SIZE;
+                // PNGs too large to decode within the budget are streamed row by row
+                boolean streamed = format instanceof StreamableFormat
+                        && StreamingCarrier.shouldStream(carrier, pixels, memoryBudget);
+                // Cached carriers are copied from memory, so there is no file to read
+                boolean cached = !streamed && cache != null && cache.contains(carrier);
+                long fileSize = cached ? 0 : carrier.length();
+                long encodedSize = pixels * ENCODED_BYTES_PER_PIXEL;
+                // Outputs come out close to the size of their source, so start there
+                int initialSize = (int) Math.min(encodedSize, fileSize > 0 ? fileSize : INITIAL_ENCODED_SIZE);
+                // Files held between stages count towards the budget too
+                boolean buffered = !streamed && fileSize <= MAX_BUFFERED && encodedSize <= MAX_BUFFERED;
+                long bytes = streamed ? STREAMING_COST
+                        : pixels * BYTES_PER_PIXEL + (buffered ? fileSize + encodedSize : 0);
+                // A carrier larger than the whole budget is admitted on its own
+                int cost = (int) Math.min(budgetKiB, Math.max(1, bytes >> 10));
+                admission.acquire(cost);
+                inFlight.acquire();
+                // A carrier may have failed while this one waited for its permits
+                if (failed.get()) {
+                    inFlight.release();
+                    admission.release(cost);
+                    break;
+                }
+                long started = System.nanoTime();
+                BackendEvents.CarrierEvent event = new BackendEvents.CarrierEvent();
+                event.begin();
+                CompletableFuture<Long> done;
+                if (buffered) {
+                    done = CompletableFuture.completedFuture(carrier)
+                            .thenApplyAsync(step(file -> cached ? null : readFile(file)), io)
+                            .thenApplyAsync(step(contents -> embed(slice, header, payload, contents,
+                                    initialSize)), pool)
+                            .thenApplyAsync(step(encoded -> encoded.writeTo(encryptedFile)), io);
+                } else {
+                    // Streamed and oversized carriers read and write on the worker itself
+                    done = CompletableFuture.completedFuture(slice)
+                            .thenApplyAsync(step(unused -> streamed
+                                    ? streamCarrier(slice, header, payload, encryptedFile, (StreamableFormat) format)
+                                    : embedCarrier(slice, header, payload, encryptedFile, format)), pool);
+                }
+                // Checkpointed once the file is complete, so a rerun can skip it
+                if (journal != null)
+                    done = done.thenApply(step(encodeNanos -> {
+                        journal.carrierDone(slice, encryptedFile);
+                        return encodeNanos;
+                    }));
+                futures.add(done.thenApply((Long encodeNanos) -> {
+                    tracker.carrierDone(slice.getLength(), encryptedFile, System.nanoTime() - started,
+                            encodeNanos);
+                    BackendMetrics.get().carrierDone(pixels);
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.carrier = carrier.getPath();
+                        event.pixels = pixels;
+                        event.sliceBytes = slice.getLength();
+                        event.streamed = streamed;
+                        event.commit();
+                    }
+                    return encryptedFile;
+                }).whenComplete((file, error) -> {
+                    if (error != null)
+                        failed.set(true);
+                    inFlight.release();
+                    admission.release(cost);
+                }));
+            }
+            List<File> written = new ArrayList<File>();
+            for (Future<File> future : futures)
+                written.add(future.get());
+            return written;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SteganException("Encoding was interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof SteganException)
+                throw (SteganException) cause;
+            throw new SteganException("Unexpected error while encoding carriers.", cause);
+        } finally {
+            for (Future<File> future : futures)
+                future.cancel(true);
+            pool.shutdownNow();
+            io.shutdownNow();
+        }
+    }
+
+    /**
+     * Decodes a single carrier, embeds its slice and writes it out with the
+     * default PNG options.
+     *
+     * @param slice   the slice to embed
+     * @param header  the header of the slice
+     * @param payload the source of the whole payload
+     * @return the written file
+     * @throws IOException     if the carrier cannot be read or written
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public static File encodeCarrier(CarrierSlice slice, byte[] header, PayloadSource payload)
+            throws IOException, SteganException {
+        return encodeCarrier(slice, header, payload, new PngFormat(PngOptions.DEFAULT));
+    }
+
+    /**
+     * Decodes a single carrier, embeds its slice and writes it out.
+     *
+     * @param slice   the slice to embed
+     * @param header  the header of the slice
+     * @param payload the source of the whole payload
+     * @param format  the format to write the carrier in
+     * @return the written file
+     * @throws IOException     if the carrier cannot be read or written
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public static File encodeCarrier(CarrierSlice slice, byte[] header, PayloadSource payload,
+            CarrierFormat format) throws IOException, SteganException {
+        File encryptedFile = outputFile(slice.getCarrier(), format);
+        embedCarrier(slice, header, payload, encryptedFile, format);
+        return encryptedFile;
+    }
+
+    /**
+     * Gets the file an encoded carrier is written to. The carrier's extension is
+     * replaced by the format's, so an output never claims to be a format it is
+     * not. Carriers that differ only in their extension share an output, which
+     * {@link #encode} rejects.
+     *
+     * @param carrier the original carrier
+     * @param format  the format the carrier is written in
+     * @return the output file, next to the carrier
+     */
+    public static File outputFile(File carrier, CarrierFormat format) {
+        return outputFile(carrier, format, null);
+    }
+
+    /**
+     * Gets the file an encoded carrier is written to, as
+     * {@link #outputFile(File, CarrierFormat)} but in the given directory.
+     *
+     * @param carrier   the original carrier
+     * @param format    the format the carrier is written in
+     * @param directory the directory to write to, or null for the carrier's own
+     * @return the output file
+     */
+    public static File outputFile(File carrier, CarrierFormat format, File directory) {
+        String name = carrier.getName();
+        int dotIndex = name.lastIndexOf('.');
+        if (dotIndex > 0)
+            name = name.substring(0, dotIndex);
+        name += "." + format.getExtension();
+        return new File(directory == null ? carrier.getAbsoluteFile().getParentFile() : directory,
+                "encrypted_" + name);
+    }
+
+    // #region Helper functions
+
+    // A pipeline step, which may throw the checked exceptions of the backend
+    private interface Step<T, R> {
+        R apply(T input) throws IOException, SteganException;
+    }
+
+    // An encoded carrier held in memory until it is written
+    private static final class EncodedCarrier extends ByteArrayOutputStream {
+
+        private long encodeNanos;
+
+        EncodedCarrier(int size) {
+            super(size);
+        }
+
+        // Writes the carrier without copying it and returns the time spent encoding it
+        long writeTo(File output) throws IOException {
+            StageTimer timer = StageTimer.start(Stage.WRITE, output);
+            try (OutputStream out = new FileOutputStream(output)) {
+                writeTo(out);
+            }
+            timer.stop(count);
+            return encodeNanos;
+        }
+    }
+
+    // Wraps a step for CompletableFuture, whose get() unwraps the exception again
+    private static <T, R> Function<T, R> step(Step<T, R> step) {
+        return (T input) -> {
+            try {
+                return step.apply(input);
+            } catch (IOException | SteganException e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    // Decodes a carrier read into memory, or copies it from the cache, embeds its
+    // slice and encodes it back into memory
+    private EncodedCarrier embed(CarrierSlice slice, byte[] header, PayloadSource payload, byte[] contents,
+            int initialSize) throws IOException, SteganException {
+        File carrier = slice.getCarrier();
+        StageTimer decode = StageTimer.start(Stage.DECODE, carrier);
+        BufferedImage image;
+        if (cache != null)
+            image = cache.read(carrier, contents);
+        else
+            image = CarrierFormat.readCarrier(carrier, contents);
+        decode.stop(contents == null ? 0 : contents.length);
+        embedSlice(slice, header, payload, image);
+        StageTimer encode = StageTimer.start(Stage.ENCODE, carrier);
+        EncodedCarrier encoded = new EncodedCarrier(initialSize);
+        encoded.encodeNanos = format.write(image, encoded);
+        encode.stop(encoded.size());
+        return encoded;
+    }
+
+    // Reads a whole carrier file into memory
+    private static byte[] readFile(File carrier) throws IOException {
+        StageTimer timer = StageTimer.start(Stage.READ, carrier);
+        byte[] contents = Files.readAllBytes(carrier.toPath());
+        timer.stop(contents.length);
+        return contents;
+    }
+
+    private static void embedSlice(CarrierSlice slice, byte[] header, PayloadSource payload, BufferedImage image)
+            throws IOException {
+        StageTimer timer = StageTimer.start(Stage.EMBED, slice.getCarrier());
+        PayloadCursor cursor = new PayloadCursor(header, payload, slice);
+        Embedder.embed(CarrierPixels.pixels(image), cursor);
+        timer.stop(slice.getLength());
+    }
+
+    // Embeds into a decoded carrier and returns the time spent writing the image,
+    // which is timed as encoding as the file is written as it is encoded
+    private static long embedCarrier(CarrierSlice slice, byte[] header, PayloadSource payload, File output,
+            CarrierFormat format) throws IOException, SteganException {
+        StageTimer decode = StageTimer.start(Stage.DECODE, slice.getCarrier());
+        BufferedImage image = CarrierFormat.readCarrier(slice.getCarrier());
+        decode.stop(slice.getCarrier().length());
+        embedSlice(slice, header, payload, image);
+        StageTimer encode = StageTimer.start(Stage.ENCODE, slice.getCarrier());
+        long encodeNanos = format.write(image, output);
+        encode.stop(output.length());
+        return encodeNanos;
+    }
+
+    private static long streamCarrier(CarrierSlice slice, byte[] header, PayloadSource payload, File output,
+            StreamableFormat format) throws IOException {
+        StageTimer timer = StageTimer.start(Stage.STREAM, slice.getCarrier());
+        long encodeNanos = StreamingCarrier.encode(slice, header, payload, output, format);
+        timer.stop(slice.getLength());
+        return encodeNanos;
+    }
+
+    // #endregion
+}
@@ -0,0 +1,183 @@
+package steganosaurus.Backend;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+
+/**
+ * A lossless image format encoded carriers can be written in. Formats are
+ * chosen per job and every format runs on the same parallel engine: a
+ * {@link StreamableFormat} is written row by row as carriers are embedded, the
+ * rest are written from the decoded image.
+ *
+ * PNG, BMP and TIFF are built in. Other formats plug in as services, listed in
+ * {@code META-INF/services/steganosaurus.Backend.CarrierFormat}. Headers and
+ * image sizes are read through ImageIO, so a format needs an ImageIO reader to
+ * be decoded again.
+ */
+public interface CarrierFormat {
+
+    /**
+     * Gets the name the format is chosen by.
+     *
+     * @return the lower case name, e.g. "png"
+     */
+    String getName();
+
+    /**
+     * Gets the extension of written carriers.
+     *
+     * @return the extension, without the dot
+     */
+    String getExtension();
+
+    /**
+     * Describes the format together with every option that changes the files
+     * it writes, so jobs written with different options are told apart.
+     *
+     * @return the description, the name unless the format has options
+     */
+    default String describe() {
+        return getName();
+    }
+
+    /**
+     * Writes a whole encoded carrier.
+     *
+     * @param argb   an image of type {@code TYPE_INT_ARGB}
+     * @param output the file to write to
+     * @return the time spent encoding, in nanoseconds
+     * @throws IOException if the file cannot be written
+     */
+    long write(BufferedImage argb, File output) throws IOException;
+
+    /**
+     * Writes a whole encoded carrier to a stream, such as a buffer the carrier
+     * is held in until it is written to disk.
+     *
+     * @param argb   an image of type {@code TYPE_INT_ARGB}
+     * @param output the stream to write to, closed once the image is written
+     * @return the time spent encoding, in nanoseconds
+     * @throws IOException if the stream cannot be written
+     */
+    long write(BufferedImage argb, OutputStream output) throws IOException;
+
+    /**
+     * Decodes a carrier written in this format.
+     *
+     * @param carrier the carrier image
+     * @return the decoded ARGB image
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    default BufferedImage read(File carrier) throws IOException, SteganException {
+        return CarrierPixels.read(carrier);
+    }
+
+    /**
+     * Decodes a carrier written in this format from the contents of its file.
+     * Formats that override {@link #read(File)} should override this too.
+     *
+     * @param contents the bytes of the carrier file
+     * @param name     the name of the carrier, for error messages
+     * @return the decoded ARGB image
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    default BufferedImage read(byte[] contents, String name) throws IOException, SteganException {
+        return CarrierPixels.read(contents, name);
+    }
+
+    /**
+     * Gets the payload bytes a carrier can hold once written in this format.
+     * Formats with a file size limit report 0 for images too large to write.
+     *
+     * @param pixels  the number of pixels the carrier has after the header
+     * @param density the density the payload is packed at
+     * @return the capacity in bytes
+     */
+    default long capacity(long pixels, Density density) {
+        return density.capacity(pixels);
+    }
+
+    /**
+     * Lists the built-in formats followed by any installed as services.
+     *
+     * @return the available formats
+     */
+    static List<CarrierFormat> available() {
+        List<CarrierFormat> formats = new ArrayList<CarrierFormat>();
+        formats.add(new PngFormat(PngOptions.DEFAULT));
+        formats.add(new BmpFormat());
+        formats.add(new TiffFormat());
+        for (CarrierFormat format : ServiceLoader.load(CarrierFormat.class))
+            formats.add(format);
+        return formats;
+    }
+
+    /**
+     * Looks up a format by name.
+     *
+     * @param name the format name, in any case
+     * @return the format, or null if none has that name
+     */
+    static CarrierFormat forName(String name) {
+        for (CarrierFormat format : available())
+            if (format.getName().equalsIgnoreCase(name))
+                return format;
+        return null;
+    }
+
+    /**
+     * Looks up the format a carrier was written in by its extension.
+     *
+     * @param carrier the carrier image
+     * @return the format, or null if no format uses that extension
+     */
+    static CarrierFormat forFile(File carrier) {
+        String name = carrier.getName();
+        int dotIndex = name.lastIndexOf('.');
+        if (dotIndex == -1)
+            return null;
+        String extension = name.substring(dotIndex + 1).toLowerCase(Locale.ROOT);
+        for (CarrierFormat format : available())
+            if (format.getExtension().equals(extension))
+                return format;
+        return null;
+    }
+
+    /**
+     * Decodes a carrier with the format its extension names, or with ImageIO if
+     * no format claims it.
+     *
+     * @param carrier the carrier image
+     * @return the decoded ARGB image
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    static BufferedImage readCarrier(File carrier) throws IOException, SteganException {
+        CarrierFormat format = forFile(carrier);
+        return format == null ? CarrierPixels.read(carrier) : format.read(carrier);
+    }
+
+    /**
+     * Decodes a carrier that has already been read into memory, as
+     * {@link #readCarrier(File)}.
+     *
+     * @param carrier  the carrier image
+     * @param contents the bytes of the carrier file
+     * @return the decoded ARGB image
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    static BufferedImage readCarrier(File carrier, byte[] contents) throws IOException, SteganException {
+        CarrierFormat format = forFile(carrier);
+        return format == null ? CarrierPixels.read(contents, carrier.getName())
+                : format.read(contents, carrier.getName());
+    }
+}
@@ -0,0 +1,389 @@
+package steganosaurus.Backend;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * The fixed size header stored in the first pixels of every carrier. See the
+ * readme for the byte layout.
+ */
+public final class CarrierHeader {
+
+    // Header size in bytes
+    public static final int SIZE = 103;
+    // Field sizes in bytes
+    private static final int HASH_SIZE = 32;
+    private static final int NAME_SIZE = 32;
+    private static final int EXTENSION_SIZE = 8;
+
+    private final byte[] idHash;
+    private final String fileName;
+    private final String fileExtension;
+    private final long byteLength;
+    private final int fileId;
+    private final long sliceOffset;
+    private final long sliceLength;
+    private final Density density;
+    private final PayloadCodec codec;
+    private final int encryption;
+
+    /**
+     * Constructs a CarrierHeader. Names and extensions longer than their fields
+     * are truncated when written.
+     *
+     * @param idHash        the SHA-256 hash of the hidden file, or of the hidden
+     *                      data as embedded if it is encrypted
+     * @param fileName      the name of the hidden file, without extension, empty
+     *                      if it is encrypted
+     * @param fileExtension the extension of the hidden file, without the dot,
+     *                      empty if it is encrypted or has none
+     * @param byteLength    the total length of the hidden data as embedded, after
+     *                      the codec
+     * @param fileId        the sequence number of the carrier
+     * @param sliceOffset   the position of the first byte stored in the carrier
+     * @param sliceLength   the number of bytes stored in the carrier
+     * @param density       the density the slice is packed at, null only for
+     *                      headers parsed from images that hold no data
+     * @param codec         the codec the hidden data was encoded with, null only
+     *                      for headers parsed from images that hold no data
+     * @param encryption    how the hidden data was encrypted, one of the
+     *                      {@link PayloadCipher} ids
+     */
+    public CarrierHeader(byte[] idHash, String fileName, String fileExtension, long byteLength, int fileId,
+            long sliceOffset, long sliceLength, Density density, PayloadCodec codec, int encryption) {
+        if (idHash.length != HASH_SIZE)
+            throw new IllegalArgumentException("ID hash must be " + HASH_SIZE + " bytes: " + idHash.length);
+        this.idHash = idHash.clone();
+        this.fileName = fileName;
+        this.fileExtension = fileExtension;
+        this.byteLength = byteLength;
+        this.fileId = fileId;
+        this.sliceOffset = sliceOffset;
+        this.sliceLength = sliceLength;
+        this.density = density;
+        this.codec = codec;
+        this.encryption = encryption;
+    }
+
+    /**
+     * Serialises the header into its on-image layout.
+     *
+     * @return the header bytes
+     */
+    public byte[] toBytes() {
+        byte[] header = new byte[SIZE];
+        System.arraycopy(idHash, 0, header, 0, HASH_SIZE);
+        writeString(header, 32, NAME_SIZE, fileName);
+        writeString(header, 64, EXTENSION_SIZE, fileExtension);
+        writeLong(header, 72, byteLength);
+        for (int i = 0; i < 4; i++)
+            header[80 + i] = (byte) (fileId >> (8 * (3 - i)));
+        writeLong(header, 84, sliceOffset);
+        writeLong(header, 92, sliceLength);
+        header[100] = (byte) density.getCode();
+        header[101] = (byte) codec.getId();
+        header[102] = (byte) encryption;
+        return header;
+    }
+
+    /**
+     * Parses a header from its on-image layout.
+     *
+     * @param header the header bytes, at least {@link #SIZE} long
+     * @return the parsed header
+     */
+    public static CarrierHeader parse(byte[] header) {
+        if (header.length < SIZE)
+            throw new IllegalArgumentException("Header must be " + SIZE + " bytes: " + header.length);
+        int fileId = 0;
+        for (int i = 0; i < 4; i++)
+            fileId = (fileId << 8) | (header[80 + i] & 0xFF);
+        return new CarrierHeader(Arrays.copyOfRange(header, 0, HASH_SIZE),
+                readString(header, 32, NAME_SIZE),
+                readString(header, 64, EXTENSION_SIZE),
+                readLong(header, 72),
+                fileId,
+                readLong(header, 84),
+                readLong(header, 92),
+                Density.fromCode(header[100] & 0xFF),
+                PayloadCodec.fromId(header[101] & 0xFF),
+                header[102] & 0xFF);
+    }
+
+    /**
+     * Reads the header of a carrier, decoding only the rows that hold it.
+     *
+     * @param carrier the carrier image
+     * @return the parsed header
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image or is too
+     *                         small to hold a header
+     */
+    public static CarrierHeader read(File carrier) throws IOException, SteganException {
+        if (PngRowReader.isPng(carrier)) {
+            try (PngRowReader png = new PngRowReader(new FileInputStream(carrier))) {
+                if (png.isStreamable())
+                    return read(carrier, png);
+            }
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(carrier)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext())
+                throw new SteganException("Cannot read image from carrier file: " + carrier.getName());
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height <= SIZE)
+                    throw new SteganException("Carrier file " + carrier.getName() + " is too small to hold any data.");
+                // Only decode the scanlines the header lives in
+                int rows = Math.min(height, (SIZE + width - 1) / width);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(0, 0, width, rows));
+                BufferedImage region = CarrierPixels.normalize(reader.read(0, param));
+                return parse(CarrierPixels.pixels(region), (long) width * height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the header could have been written by this program for a
+     * carrier with the given number of pixels after the header. Images that hold
+     * no hidden data decode to random bytes, which fail these checks.
+     *
+     * @param pixels the number of pixels the carrier has after the header
+     * @return true if every field is consistent
+     */
+    public boolean isPlausible(long pixels) {
+        return density != null
+                && codec != null
+                && PayloadCipher.isKnown(encryption)
+                && fileId >= 0
+                && byteLength >= 0
+                && sliceOffset >= 0
+                && sliceLength >= 0
+                && sliceLength <= density.capacity(pixels)
+                && sliceOffset <= byteLength - sliceLength
+                && getFullName().isEmpty() == (encryption != PayloadCipher.NONE)
+                && isCleanText(fileName)
+                && isCleanText(fileExtension);
+    }
+
+    /**
+     * Gets the SHA-256 hash of the hidden file, before the codec. For encrypted
+     * data it is the hash of the data as embedded, so it gives nothing away
+     * about the file.
+     *
+     * @return a copy of the hash
+     */
+    public byte[] getIdHash() {
+        return idHash.clone();
+    }
+
+    /**
+     * Gets the name of the hidden file, without extension.
+     *
+     * @return the file name, empty if the hidden data is encrypted
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Gets the extension of the hidden file, without the dot.
+     *
+     * @return the file extension, empty if there is none
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Gets the name of the hidden file with its extension, if it has one.
+     *
+     * @return the full file name, empty if the hidden data is encrypted
+     */
+    public String getFullName() {
+        return fileExtension.isEmpty() ? fileName : fileName + "." + fileExtension;
+    }
+
+    /**
+     * Gets the total length of the hidden data as embedded, after the codec.
+     *
+     * @return the byte length
+     */
+    public long getByteLength() {
+        return byteLength;
+    }
+
+    /**
+     * Gets the sequence number of the carrier.
+     *
+     * @return the file id
+     */
+    public int getFileId() {
+        return fileId;
+    }
+
+    /**
+     * Gets the position of the first byte stored in the carrier.
+     *
+     * @return the slice offset
+     */
+    public long getSliceOffset() {
+        return sliceOffset;
+    }
+
+    /**
+     * Gets the number of bytes stored in the carrier.
+     *
+     * @return the slice length
+     */
+    public long getSliceLength() {
+        return sliceLength;
+    }
+
+    /**
+     * Gets the density the slice is packed at.
+     *
+     * @return the slice density, or null if the header holds an unknown density
+     */
+    public Density getDensity() {
+        return density;
+    }
+
+    /**
+     * Gets the codec the hidden data was encoded with.
+     *
+     * @return the codec, or null if the header holds an unknown codec id
+     */
+    public PayloadCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Gets how the hidden data was encrypted.
+     *
+     * @return {@link PayloadCipher#NONE}, {@link PayloadCipher#AES_GCM}, or an
+     *         unknown id
+     */
+    public int getEncryption() {
+        return encryption;
+    }
+
+    /**
+     * Returns whether the hidden data was encrypted, so a passphrase is needed
+     * to recover it.
+     *
+     * @return true if the hidden data is encrypted
+     */
+    public boolean isEncrypted() {
+        return encryption != PayloadCipher.NONE;
+    }
+
+    // #region Helper functions
+
+    // Reads the header from the first rows of a streamable PNG
+    private static CarrierHeader read(File carrier, PngRowReader png) throws IOException, SteganException {
+        int width = png.getWidth();
+        if ((long) width * png.getHeight() <= SIZE)
+            throw new SteganException("Carrier file " + carrier.getName() + " is too small to hold any data.");
+        int rows = (SIZE + width - 1) / width;
+        int[] pixels = new int[rows * width];
+        int[] row = new int[width];
+        for (int y = 0; y < rows; y++) {
+            png.readRow(row);
+            System.arraycopy(row, 0, pixels, y * width, width);
+        }
+        return parse(pixels, (long) width * png.getHeight());
+    }
+
+    // Parses the header from the first pixels in whichever layout it was written.
+    // A header is stored across alpha only when its density uses alpha, so the
+    // layout whose density agrees with it, and whose fields fit the image, wins.
+    private static CarrierHeader parse(int[] pixels, long imagePixels) {
+        byte[] bytes = new byte[SIZE];
+        Embedder.extractHeader(pixels, bytes, true);
+        CarrierHeader argb = parse(bytes);
+        if (argb.matchesLayout(true, imagePixels))
+            return argb;
+        Embedder.extractHeader(pixels, bytes, false);
+        CarrierHeader rgb = parse(bytes);
+        return rgb.matchesLayout(false, imagePixels) ? rgb : argb;
+    }
+
+    private boolean matchesLayout(boolean alpha, long imagePixels) {
+        return density != null && (density.getChannels() == 4) == alpha && isPlausible(imagePixels - SIZE);
+    }
+
+    // Rejects text that was not valid UTF-8 or holds control characters
+    private static boolean isCleanText(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\uFFFD' || Character.isISOControl(c))
+                return false;
+        }
+        return true;
+    }
+
+    // Encodes as much of the text as fits, stopping on a character boundary
+    private static void writeString(byte[] header, int offset, int size, String value) {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        encoder.encode(CharBuffer.wrap(value), ByteBuffer.wrap(header, offset, size), true);
+    }
+
+    private static String readString(byte[] header, int offset, int size) {
+        int length = 0;
+        while (length < size && header[offset + length] != 0)
+            length++;
+        if (length == size)
+            length = completeLength(header, offset, length);
+        return new String(header, offset, length, StandardCharsets.UTF_8);
+    }
+
+    // Drops a character cut short at the end of a full field, as older headers
+    // were cut on a byte rather than a character boundary
+    private static int completeLength(byte[] header, int offset, int length) {
+        int lead = length;
+        while (lead > 0 && (header[offset + lead - 1] & 0xC0) == 0x80)
+            lead--;
+        if (lead == 0)
+            return length;
+        int first = header[offset + lead - 1] & 0xFF;
+        int expected = first >= 0xF0 ? 4 : first >= 0xE0 ? 3 : first >= 0xC0 ? 2 : 1;
+        return length - (lead - 1) < expected ? lead - 1 : length;
+    }
+
+    private static void writeLong(byte[] header, int offset, long value) {
+        for (int i = 0; i < 8; i++)
+            header[offset + i] = (byte) (value >> (8 * (7 - i)));
+    }
+
+    private static long readLong(byte[] header, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+            value = (value << 8) | (header[offset + i] & 0xFF);
+        return value;
+    }
+    // #endregion
+}
@@ -0,0 +1,132 @@
+package steganosaurus.Backend;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * Bulk pixel access for carrier images. Carriers are normalised to
+ * {@link BufferedImage#TYPE_INT_ARGB} once, after which the embed and extract
+ * loops work directly on the backing {@code int[]} of the raster instead of
+ * going through {@code getRGB}/{@code setRGB} for every pixel.
+ */
+public final class CarrierPixels {
+
+    private CarrierPixels() {
+    }
+
+    /**
+     * Decodes a carrier and normalises it to {@code TYPE_INT_ARGB}.
+     *
+     * @param carrier the carrier image
+     * @return the decoded ARGB image
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public static BufferedImage read(File carrier) throws IOException, SteganException {
+        BufferedImage decoded = ImageIO.read(carrier);
+        if (decoded == null)
+            throw new SteganException("Cannot read image from carrier file: " + carrier.getName());
+        return normalize(decoded);
+    }
+
+    /**
+     * Decodes a carrier held in memory and normalises it to
+     * {@code TYPE_INT_ARGB}. The contents are read in place rather than through
+     * an ImageIO cache.
+     *
+     * @param contents the bytes of the carrier file
+     * @param name     the name of the carrier, for error messages
+     * @return the decoded ARGB image
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public static BufferedImage read(byte[] contents, String name) throws IOException, SteganException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayImageInputStream(contents));
+        if (decoded == null)
+            throw new SteganException("Cannot read image from carrier file: " + name);
+        return normalize(decoded);
+    }
+
+    /**
+     * Returns the image as {@code TYPE_INT_ARGB}. Images that already use that
+     * type are returned as is, anything else is converted one row at a time.
+     *
+     * Converting also gives carriers without an alpha channel (JPGs, RGB PNGs)
+     * somewhere to keep the two alpha bits of every embedded byte.
+     *
+     * @param image the decoded carrier
+     * @return an ARGB image holding the same pixels
+     */
+    public static BufferedImage normalize(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB)
+            return image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage argb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = pixels(argb);
+        for (int y = 0; y < height; y++)
+            image.getRGB(0, y, width, 1, pixels, y * width, width);
+        return argb;
+    }
+
+    /**
+     * Returns the backing pixel array of an ARGB image, in row-major order. Writes
+     * to the array are writes to the image.
+     *
+     * @param argb an image of type {@code TYPE_INT_ARGB}
+     * @return the backing pixel array
+     */
+    public static int[] pixels(BufferedImage argb) {
+        if (argb.getType() != BufferedImage.TYPE_INT_ARGB)
+            throw new IllegalArgumentException("Expected a TYPE_INT_ARGB image, got type " + argb.getType());
+        return ((DataBufferInt) argb.getRaster().getDataBuffer()).getData();
+    }
+
+    // #region Helper functions
+
+    // An image input stream over a byte array, which needs no cache as it can
+    // already seek anywhere
+    private static final class ByteArrayImageInputStream extends ImageInputStreamImpl {
+
+        private final byte[] contents;
+
+        ByteArrayImageInputStream(byte[] contents) {
+            this.contents = contents;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            return streamPos < contents.length ? contents[(int) streamPos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            Objects.checkFromIndexSize(off, len, b.length);
+            bitOffset = 0;
+            if (len == 0)
+                return 0;
+            if (streamPos >= contents.length)
+                return -1;
+            int count = (int) Math.min(len, contents.length - streamPos);
+            System.arraycopy(contents, (int) streamPos, b, off, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return contents.length;
+        }
+    }
+
+    // #endregion
+}
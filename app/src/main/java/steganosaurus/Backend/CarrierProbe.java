@@ -0,0 +1,113 @@
+package steganosaurus.Backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Classifies images by whether they hold hidden data, reading only the header
+ * rows of each image. PNGs are inflated only as far as the header, so probing
+ * costs milliseconds per file regardless of image size.
+ */
+public final class CarrierProbe {
+
+    private CarrierProbe() {
+    }
+
+    /**
+     * Reads the header of an image if it holds hidden data.
+     *
+     * @param file the image to probe
+     * @return the header, or null if the file is not a readable image or holds
+     *         no hidden data
+     */
+    public static CarrierHeader probe(File file) {
+        return probe(file, new CapacityIndex());
+    }
+
+    /**
+     * Reads the header of an image if it holds hidden data, looking its size up
+     * in an index.
+     *
+     * @param file          the image to probe
+     * @param capacityIndex the index of carrier capacities
+     * @return the header, or null if the file is not a readable image or holds
+     *         no hidden data
+     */
+    public static CarrierHeader probe(File file, CapacityIndex capacityIndex) {
+        try {
+            long capacity = capacityIndex.capacityOf(file);
+            if (capacity <= 0)
+                return null;
+            CarrierHeader header = CarrierHeader.read(file);
+            return header.isPlausible(capacity) ? header : null;
+        } catch (IOException | SteganException | RuntimeException e) {
+            // A file that fails to decode in any way is not a carrier
+            return null;
+        }
+    }
+
+    /**
+     * Probes every file in a directory concurrently.
+     *
+     * @param directory   the directory to probe, not recursed into
+     * @param parallelism the maximum number of files probed at once
+     * @return the header of every file holding hidden data, in file name order.
+     *         Files missing from the map hold no hidden data.
+     * @throws SteganException if the directory cannot be listed or the probe is
+     *                         interrupted
+     */
+    public static Map<File, CarrierHeader> probeDirectory(File directory, int parallelism) throws SteganException {
+        return probeDirectory(directory, parallelism, new CapacityIndex());
+    }
+
+    /**
+     * Probes every file in a directory concurrently, looking sizes up in an
+     * index.
+     *
+     * @param directory     the directory to probe, not recursed into
+     * @param parallelism   the maximum number of files probed at once
+     * @param capacityIndex the index of carrier capacities
+     * @return the header of every file holding hidden data, in file name order.
+     *         Files missing from the map hold no hidden data.
+     * @throws SteganException if the directory cannot be listed or the probe is
+     *                         interrupted
+     */
+    public static Map<File, CarrierHeader> probeDirectory(File directory, int parallelism,
+            CapacityIndex capacityIndex) throws SteganException {
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null)
+            throw new SteganException("Cannot list directory: " + directory);
+        Arrays.sort(files);
+        Map<File, CarrierHeader> headers = new LinkedHashMap<File, CarrierHeader>();
+        if (files.length == 0)
+            return headers;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, files.length));
+        try {
+            List<Future<CarrierHeader>> futures = new ArrayList<Future<CarrierHeader>>();
+            for (File file : files)
+                futures.add(pool.submit(() -> probe(file, capacityIndex)));
+            for (int i = 0; i < files.length; i++) {
+                CarrierHeader header = futures.get(i).get();
+                if (header != null)
+                    headers.put(files[i], header);
+            }
+            return headers;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SteganException("Probing was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new SteganException("Unexpected error while probing " + directory, e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
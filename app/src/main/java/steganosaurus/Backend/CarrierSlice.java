@@ -0,0 +1,89 @@
+package steganosaurus.Backend;
+
+import java.io.File;
+
+/**
+ * A contiguous slice of the payload assigned to a single carrier image.
+ */
+public final class CarrierSlice {
+
+    private final File carrier;
+    private final int fileId;
+    private final long offset;
+    private final int length;
+    private final Density density;
+
+    /**
+     * Constructs a CarrierSlice.
+     *
+     * @param carrier the carrier image the slice is written to
+     * @param fileId  the sequence number of the carrier, starting at 0
+     * @param offset  the index of the first payload byte in the slice
+     * @param length  the number of payload bytes in the slice
+     */
+    public CarrierSlice(File carrier, int fileId, long offset, int length) {
+        this(carrier, fileId, offset, length, Density.DEFAULT);
+    }
+
+    /**
+     * Constructs a CarrierSlice packed at the given density.
+     *
+     * @param carrier the carrier image the slice is written to
+     * @param fileId  the sequence number of the carrier, starting at 0
+     * @param offset  the index of the first payload byte in the slice
+     * @param length  the number of payload bytes in the slice
+     * @param density the density the slice is packed at
+     */
+    public CarrierSlice(File carrier, int fileId, long offset, int length, Density density) {
+        this.carrier = carrier;
+        this.fileId = fileId;
+        this.offset = offset;
+        this.length = length;
+        this.density = density;
+    }
+
+    /**
+     * Gets the carrier image the slice is written to.
+     *
+     * @return the carrier file
+     */
+    public File getCarrier() {
+        return carrier;
+    }
+
+    /**
+     * Gets the sequence number of the carrier.
+     *
+     * @return the file id
+     */
+    public int getFileId() {
+        return fileId;
+    }
+
+    /**
+     * Gets the index of the first payload byte in the slice.
+     *
+     * @return the slice offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the number of payload bytes in the slice.
+     *
+     * @return the slice length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the density the slice is packed at.
+     *
+     * @return the slice density
+     */
+    public Density getDensity() {
+        return density;
+    }
+}
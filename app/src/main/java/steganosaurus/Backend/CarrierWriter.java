@@ -0,0 +1,39 @@
+package steganosaurus.Backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes an encoded carrier one row at a time, so carriers can be written as
+ * they are embedded without holding the whole image. See
+ * {@link StreamableFormat#open}.
+ */
+public interface CarrierWriter extends Closeable {
+
+    /**
+     * Writes the next row of the image.
+     *
+     * @param argb   the ARGB pixels
+     * @param offset the index of the first pixel of the row
+     * @throws IOException if the row cannot be written or every row has already
+     *                     been written
+     */
+    void writeRow(int[] argb, int offset) throws IOException;
+
+    /**
+     * Gets the time spent encoding rows so far, which is the cost of the output
+     * format on top of producing the pixels.
+     *
+     * @return the encode time in nanoseconds
+     */
+    long getEncodeNanos();
+
+    /**
+     * Finishes the image. Fails if fewer rows were written than the image
+     * height.
+     *
+     * @throws IOException if the image cannot be finished or is incomplete
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,162 @@
+package steganosaurus.Backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Splits a payload into contiguous slices, one per carrier, sized by the real
+ * pixel capacity of each carrier. Carriers are filled in order and carriers
+ * that are not needed are left out of the plan.
+ *
+ * The densest allowed packing decides how few carriers are needed. Each of
+ * those carriers then gets the sparsest density that still lets them hold the
+ * payload together, so small payloads change as few bits as possible.
+ */
+public final class ChunkPlanner {
+
+    private ChunkPlanner() {
+    }
+
+    /**
+     * Plans how a payload of the given length is spread over carriers written as
+     * PNGs.
+     *
+     * @param payloadLength the number of payload bytes to store
+     * @param carriers      the carriers to fill, in order
+     * @param index         the index to look carrier capacities up in
+     * @param maxDensity    the densest packing allowed, sparser densities with
+     *                      the same channels are used where they are enough
+     * @return the slices to write, in file id order
+     * @throws IOException     if a carrier cannot be read
+     * @throws SteganException if a carrier is unusable or the carriers are too
+     *                         small for the payload
+     */
+    public static List<CarrierSlice> plan(long payloadLength, List<File> carriers, CapacityIndex index,
+            Density maxDensity) throws IOException, SteganException {
+        return plan(payloadLength, carriers, index, maxDensity, new PngFormat(PngOptions.DEFAULT));
+    }
+
+    /**
+     * Plans how a payload of the given length is spread over the carriers.
+     *
+     * @param payloadLength the number of payload bytes to store
+     * @param carriers      the carriers to fill, in order
+     * @param index         the index to look carrier capacities up in
+     * @param maxDensity    the densest packing allowed, sparser densities with
+     *                      the same channels are used where they are enough
+     * @param format        the format the carriers will be written in
+     * @return the slices to write, in file id order
+     * @throws IOException     if a carrier cannot be read
+     * @throws SteganException if a carrier is unusable or the carriers are too
+     *                         small for the payload
+     */
+    public static List<CarrierSlice> plan(long payloadLength, List<File> carriers, CapacityIndex index,
+            Density maxDensity, CarrierFormat format) throws IOException, SteganException {
+        if (carriers.isEmpty())
+            throw new SteganException("No carrier files have been added.");
+        List<Density> densities = maxDensity.upTo();
+        int densest = densities.size() - 1;
+        // Take carriers until the densest packing holds the payload
+        List<File> used = new ArrayList<File>();
+        List<Long> pixels = new ArrayList<Long>();
+        long held = 0;
+        for (File carrier : carriers) {
+            // Always use at least one carrier, even for an empty payload
+            if (held >= payloadLength && !used.isEmpty())
+                break;
+            long capacity = index.capacityOf(carrier);
+            if (capacity <= 0)
+                throw new SteganException("Carrier file " + carrier.getName() + " is too small to hold any data.");
+            if (capacityAt(capacity, maxDensity, format) <= 0)
+                throw new SteganException("Carrier file " + carrier.getName() + " is too large to write as "
+                        + format.getName().toUpperCase(Locale.ROOT) + ".");
+            used.add(carrier);
+            pixels.add(capacity);
+            held += capacityAt(capacity, maxDensity, format);
+        }
+        if (held < payloadLength)
+            throw new SteganException("Carrier files can only hold " + held + " of the " + payloadLength
+                    + " bytes needed.");
+
+        // Start every carrier at the sparsest density that works for all of them
+        int uniform = 0;
+        while (uniform < densest && totalAt(pixels, densities.get(uniform), format) < payloadLength)
+            uniform++;
+        int[] levels = new int[used.size()];
+        Arrays.fill(levels, uniform);
+        long total = totalAt(pixels, densities.get(uniform), format);
+        // Then thin out each carrier while the rest still make up the difference
+        for (int i = 0; i < levels.length; i++) {
+            long current = capacityAt(pixels.get(i), densities.get(levels[i]), format);
+            for (int level = 0; level < levels[i]; level++) {
+                long lowered = total - current + capacityAt(pixels.get(i), densities.get(level), format);
+                if (lowered >= payloadLength) {
+                    total = lowered;
+                    levels[i] = level;
+                    break;
+                }
+            }
+        }
+
+        List<CarrierSlice> slices = new ArrayList<CarrierSlice>();
+        long offset = 0;
+        for (int i = 0; i < used.size(); i++) {
+            Density density = densities.get(levels[i]);
+            int length = (int) Math.min(capacityAt(pixels.get(i), density, format), payloadLength - offset);
+            slices.add(new CarrierSlice(used.get(i), i, offset, length, density));
+            offset += length;
+        }
+        return slices;
+    }
+
+    /**
+     * Calculates how many payload bytes a carrier can hold, reading only the image
+     * dimensions rather than decoding the pixels.
+     *
+     * @param carrier the carrier image
+     * @return the number of pixels left after the header, capped to the largest
+     *         array a decoded raster can have
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public static long capacityOf(File carrier) throws IOException, SteganException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(carrier)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext())
+                throw new SteganException("Cannot read image from carrier file: " + carrier.getName());
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                return Math.min(pixels, Integer.MAX_VALUE) - MainBackend.HEADER_SIZE;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // #region Helper functions
+
+    // Slices are addressed with int lengths, so cap what one carrier can take
+    private static long capacityAt(long pixels, Density density, CarrierFormat format) {
+        return Math.min(format.capacity(pixels, density), Integer.MAX_VALUE);
+    }
+
+    private static long totalAt(List<Long> pixels, Density density, CarrierFormat format) {
+        long total = 0;
+        for (long carrierPixels : pixels)
+            total += capacityAt(carrierPixels, density, format);
+        return total;
+    }
+
+    // #endregion
+}
@@ -0,0 +1,82 @@
+package steganosaurus.Backend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Codec that compresses the payload with zlib. Text, logs and other redundant
+ * files shrink several times over, so they need that many fewer carrier
+ * pixels.
+ */
+public final class DeflateCodec implements PayloadCodec {
+
+    // Header id of this codec
+    static final int ID = 1;
+    // Size of the buffers between the coder and the stream
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int level;
+
+    /**
+     * Constructs a DeflateCodec.
+     *
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to
+     *              {@link Deflater#BEST_COMPRESSION}, or
+     *              {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public DeflateCodec(int level) {
+        if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)
+                && level != Deflater.DEFAULT_COMPRESSION)
+            throw new IllegalArgumentException("Compression level must be 1 to 9: " + level);
+        this.level = level;
+    }
+
+    /**
+     * Gets the compression level.
+     *
+     * @return the level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public OutputStream encoding(OutputStream out) {
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                // A deflater passed in is not ended by the stream itself
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public OutputStream decoding(OutputStream out) {
+        Inflater inflater = new Inflater();
+        return new InflaterOutputStream(out, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package steganosaurus.Backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How densely payload bits are packed into the pixels of a carrier: how many
+ * low bits of each channel are used, and whether alpha is one of the channels.
+ * Channels are filled in the order blue, green, red, alpha, and payload bytes
+ * are packed least significant bit first, so {@link #ARGB_2} stores exactly one
+ * byte per pixel.
+ *
+ * The header is always stored at one byte per pixel, so it can be read before
+ * the density of the payload is known. Carriers packed at an ARGB density hold
+ * it as {@link #ARGB_2} does, and carriers packed at an RGB density hold it in
+ * red, green and blue only, see {@link Embedder}.
+ */
+public enum Density {
+    ARGB_1(1, 4, 0x01),
+    ARGB_2(2, 4, 0x02),
+    ARGB_4(4, 4, 0x04),
+    // Leaves alpha untouched, for images whose alpha gets flattened or stripped
+    RGB_1(1, 3, 0x11),
+    RGB_2(2, 3, 0x12),
+    RGB_4(4, 3, 0x14);
+
+    // The density used when none is chosen, one byte per pixel
+    public static final Density DEFAULT = ARGB_2;
+
+    private final int bitsPerChannel;
+    private final int channels;
+    private final int code;
+
+    private Density(int bitsPerChannel, int channels, int code) {
+        this.bitsPerChannel = bitsPerChannel;
+        this.channels = channels;
+        this.code = code;
+    }
+
+    /**
+     * Gets the number of low bits used in each channel.
+     *
+     * @return 1, 2 or 4
+     */
+    public int getBitsPerChannel() {
+        return bitsPerChannel;
+    }
+
+    /**
+     * Gets the number of channels used in each pixel.
+     *
+     * @return 4 for ARGB, 3 for RGB
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Gets the number of payload bits stored in each pixel.
+     *
+     * @return the bits per pixel
+     */
+    public int getBitsPerPixel() {
+        return bitsPerChannel * channels;
+    }
+
+    /**
+     * Gets the byte this density is recorded as in the header.
+     *
+     * @return the density code
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Calculates how many payload bytes fit in the given number of pixels.
+     *
+     * @param pixels the pixels available after the header
+     * @return the capacity in bytes
+     */
+    public long capacity(long pixels) {
+        return pixels <= 0 ? pixels : pixels * getBitsPerPixel() / 8;
+    }
+
+    /**
+     * Calculates how many pixels are needed to hold the given number of payload
+     * bytes.
+     *
+     * @param bytes the payload bytes
+     * @return the pixels needed, rounded up
+     */
+    public long pixelsFor(long bytes) {
+        return (bytes * 8 + getBitsPerPixel() - 1) / getBitsPerPixel();
+    }
+
+    /**
+     * Gets the densities up to this one that use the same channels, from the
+     * sparsest to this one.
+     *
+     * @return the candidate densities, in increasing order
+     */
+    public List<Density> upTo() {
+        List<Density> densities = new ArrayList<Density>();
+        for (Density density : values())
+            if (density.channels == channels && density.bitsPerChannel <= bitsPerChannel)
+                densities.add(density);
+        return densities;
+    }
+
+    /**
+     * Looks up a density by its channel count and bits per channel.
+     *
+     * @param bitsPerChannel the low bits used in each channel
+     * @param alpha          whether alpha is one of the channels
+     * @return the density
+     */
+    public static Density of(int bitsPerChannel, boolean alpha) {
+        for (Density density : values())
+            if (density.bitsPerChannel == bitsPerChannel && (density.channels == 4) == alpha)
+                return density;
+        throw new IllegalArgumentException("Bits per channel must be 1, 2 or 4: " + bitsPerChannel);
+    }
+
+    /**
+     * Looks up a density by the byte it is recorded as in the header.
+     *
+     * @param code the density code
+     * @return the density, or null if no density has that code
+     */
+    public static Density fromCode(int code) {
+        for (Density density : values())
+            if (density.code == code)
+                return density;
+        return null;
+    }
+}
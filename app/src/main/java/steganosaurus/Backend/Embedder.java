@@ -0,0 +1,337 @@
+package steganosaurus.Backend;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Embedding engine that hides bytes in the least significant bits of a carrier
+ * image. The header always takes one byte per pixel: two bits in each of the A,
+ * R, G and B channels, or for densities that leave alpha untouched, three bits
+ * in blue and green and two in red. The payload after it is packed at the
+ * {@link Density} of its slice.
+ *
+ * The engine reads straight from a primitive {@link PayloadCursor} and works on
+ * the raw ARGB array of the carrier (see {@link CarrierPixels}), so the hot
+ * loops are plain array scans with no per-pixel colour model conversion.
+ *
+ * The payload is moved a word at a time: eight bytes (six for RGB densities,
+ * whose pixels do not divide 64 bits) are read with one load and dealt out to
+ * the pixels they cover through a lookup table that spreads a byte of bits over
+ * its channels. Extraction gathers the channel bits with shifts and masks and
+ * stores whole words back.
+ */
+public final class Embedder {
+
+    // Clears the two low bits of every channel
+    private static final int CHANNEL_MASK = 0xFCFCFCFC;
+    // Clears the low bits an RGB header byte is stored in, keeping alpha
+    private static final int RGB_HEADER_MASK = 0xFFFCF8F8;
+    // Size of the array payload words are staged through, a whole number of
+    // 8 and 6 byte words
+    static final int STAGE_SIZE = 12288;
+    // Little-endian long view of a byte array, for loading and storing words
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    // Per density, indexed by ordinal: the low-bit mask to keep, the table that
+    // spreads 8 bits over the low bits of the channels, and the size of a word
+    private static final int[] CLEAR = new int[Density.values().length];
+    private static final int[][] SPREAD = new int[Density.values().length][256];
+    private static final int[] WORD_BYTES = new int[Density.values().length];
+    private static final int[] WORD_PIXELS = new int[Density.values().length];
+
+    static {
+        for (Density density : Density.values()) {
+            int o = density.ordinal();
+            CLEAR[o] = embedBitsSlow(-1, 0, density);
+            for (int bits = 0; bits < 256; bits++)
+                SPREAD[o][bits] = embedBitsSlow(0, bits, density);
+            // The most bytes up to 8 that end on a pixel boundary
+            int bitsPerPixel = density.getBitsPerPixel();
+            int wordBytes = 8;
+            while ((wordBytes * 8) % bitsPerPixel != 0)
+                wordBytes--;
+            WORD_BYTES[o] = wordBytes;
+            WORD_PIXELS[o] = wordBytes * 8 / bitsPerPixel;
+        }
+    }
+
+    private Embedder() {
+    }
+
+    /**
+     * Embeds the bytes of a cursor into the given pixels, starting at the first
+     * one. Embedding stops when the cursor is drained or the pixels run out,
+     * whichever comes first.
+     *
+     * @param pixels the ARGB pixels of the carrier, in row-major order
+     * @param cursor the header and payload bytes to write
+     * @return the number of pixels written, header included
+     */
+    public static int embed(int[] pixels, PayloadCursor cursor) {
+        int count = (int) Math.min(pixels.length, cursor.remaining());
+        Density density = cursor.getDensity();
+        // The header keeps off the alpha channel whenever the payload does
+        boolean alpha = density.getChannels() == 4;
+        int i = 0;
+        for (; i < count && cursor.inHeader(); i++)
+            pixels[i] = alpha ? embedByte(pixels[i], cursor.next()) : embedRgbByte(pixels[i], cursor.next());
+        // Step to a byte boundary, move whole words, then finish the tail
+        for (; i < count && !cursor.isAligned(); i++)
+            pixels[i] = embedBits(pixels[i], cursor.next(), density);
+        i += cursor.packWords(pixels, i, count);
+        for (; i < count; i++)
+            pixels[i] = embedBits(pixels[i], cursor.next(), density);
+        return count;
+    }
+
+    /**
+     * Extracts bytes previously embedded with {@link #embed} at the default
+     * density.
+     *
+     * @param pixels the ARGB pixels of the carrier, in row-major order
+     * @param from   the index of the first pixel to read
+     * @param dst    the array to fill
+     * @param offset the index in dst of the first byte to write
+     * @param length the number of bytes to extract
+     */
+    public static void extract(int[] pixels, int from, byte[] dst, int offset, int length) {
+        int done = unpackWords(pixels, from, length, dst, offset, length, Density.DEFAULT);
+        for (int i = done; i < length; i++)
+            dst[offset + i] = (byte) extractByte(pixels[from + i]);
+    }
+
+    /**
+     * Extracts a header stored one byte per pixel from the first pixels.
+     *
+     * @param pixels the ARGB pixels of the carrier, in row-major order
+     * @param dst    the array to fill, one byte per pixel read
+     * @param alpha  whether the header was stored across all four channels
+     *               rather than red, green and blue only
+     */
+    public static void extractHeader(int[] pixels, byte[] dst, boolean alpha) {
+        if (alpha) {
+            extract(pixels, 0, dst, 0, dst.length);
+            return;
+        }
+        for (int i = 0; i < dst.length; i++)
+            dst[i] = (byte) extractRgbByte(pixels[i]);
+    }
+
+    /**
+     * Packs whole words of payload into consecutive pixels. Stops at the last
+     * word that fits in both the payload and the pixels.
+     *
+     * The payload is copied through a staging array in bulk first, since
+     * reading words one at a time from mapped buffers costs more than the copy.
+     *
+     * @param src     the payload
+     * @param index   the index in src of the first byte to pack
+     * @param length  the bytes available in src
+     * @param stage   scratch space, {@link #STAGE_SIZE} bytes long
+     * @param pixels  the ARGB pixels of the carrier
+     * @param from    the index of the first pixel to write
+     * @param count   the pixels available from there
+     * @param density the density to pack at
+     * @return the number of payload bytes packed, a whole number of words
+     */
+    static int packWords(ByteBuffer src, int index, int length, byte[] stage, int[] pixels, int from, int count,
+            Density density) {
+        int o = density.ordinal();
+        int wordBytes = WORD_BYTES[o];
+        int wordPixels = WORD_PIXELS[o];
+        int total = Math.min(length / wordBytes, count / wordPixels) * wordBytes;
+        for (int done = 0; done < total; done += stage.length) {
+            int staged = Math.min(stage.length, total - done);
+            src.get(index + done, stage, 0, staged);
+            packStaged(stage, staged, pixels, from + done / wordBytes * wordPixels, density);
+        }
+        return total;
+    }
+
+    // Packs a staging array holding a whole number of words
+    private static void packStaged(byte[] stage, int length, int[] pixels, int from, Density density) {
+        int o = density.ordinal();
+        int[] spread = SPREAD[o];
+        if (density == Density.DEFAULT) {
+            // One byte per pixel, the table lookup is the whole job
+            for (int i = 0, p = from; i < length; i += 8, p += 8) {
+                long word = (long) LONG_LE.get(stage, i);
+                for (int j = 0; j < 8; j++)
+                    pixels[p + j] = (pixels[p + j] & CHANNEL_MASK) | spread[(int) (word >>> (j * 8)) & 0xFF];
+            }
+            return;
+        }
+        int wordBytes = WORD_BYTES[o];
+        int wordPixels = WORD_PIXELS[o];
+        int clear = CLEAR[o];
+        int bitsPerPixel = density.getBitsPerPixel();
+        int valueMask = (1 << bitsPerPixel) - 1;
+        for (int i = 0, p = from; i < length; i += wordBytes) {
+            long word = wordBytes == 8 ? (long) LONG_LE.get(stage, i) : readWord6(stage, i);
+            for (int j = 0; j < wordPixels; j++, p++) {
+                int bits = (int) word & valueMask;
+                word >>>= bitsPerPixel;
+                // Densities over 8 bits per pixel use 4 bits per channel, so the
+                // second byte lands two channels up
+                pixels[p] = (pixels[p] & clear) | spread[bits & 0xFF] | (spread[bits >>> 8] << 16);
+            }
+        }
+    }
+
+    private static long readWord6(byte[] data, int index) {
+        long word = 0;
+        for (int b = 5; b >= 0; b--)
+            word = (word << 8) | (data[index + b] & 0xFF);
+        return word;
+    }
+
+    /**
+     * Unpacks whole words of payload from consecutive pixels. Stops at the last
+     * word that fits in both the pixels and the destination.
+     *
+     * @param pixels  the ARGB pixels of the carrier
+     * @param from    the index of the first pixel to read
+     * @param count   the pixels available from there
+     * @param dst     the array to fill
+     * @param offset  the index in dst of the first byte to write
+     * @param length  the bytes available in dst
+     * @param density the density the payload was packed at
+     * @return the number of bytes unpacked, a whole number of words
+     */
+    static int unpackWords(int[] pixels, int from, int count, byte[] dst, int offset, int length,
+            Density density) {
+        int o = density.ordinal();
+        int wordBytes = WORD_BYTES[o];
+        int wordPixels = WORD_PIXELS[o];
+        int words = Math.min(length / wordBytes, count / wordPixels);
+        if (density == Density.DEFAULT) {
+            for (int w = 0, p = from; w < words; w++, p += 8, offset += 8) {
+                long word = 0;
+                // Fold two pixels at once, as extractByte does for one
+                for (int j = 0; j < 8; j += 2) {
+                    long folded = (pixels[p + j] & 0x03030303L) | ((long) (pixels[p + j + 1] & 0x03030303) << 32);
+                    folded = (folded | (folded >>> 6)) & 0x000F000F000F000FL;
+                    folded = (folded | (folded >>> 12)) & 0x000000FF000000FFL;
+                    word |= ((folded | (folded >>> 24)) & 0xFFFF) << (j * 8);
+                }
+                LONG_LE.set(dst, offset, word);
+            }
+            return words * 8;
+        }
+        int bitsPerPixel = density.getBitsPerPixel();
+        for (int w = 0, p = from; w < words; w++, offset += wordBytes) {
+            long word = 0;
+            for (int j = 0; j < wordPixels; j++, p++)
+                word |= (long) extractBits(pixels[p], density) << (j * bitsPerPixel);
+            if (wordBytes == 8) {
+                LONG_LE.set(dst, offset, word);
+            } else {
+                for (int b = 0; b < wordBytes; b++)
+                    dst[offset + b] = (byte) (word >>> (b * 8));
+            }
+        }
+        return words * wordBytes;
+    }
+
+    /**
+     * Stores a single byte in the low two bits of each channel of an ARGB pixel.
+     * Bits 0-1 go to blue, 2-3 to green, 4-5 to red and 6-7 to alpha.
+     *
+     * @param pixel   the original ARGB pixel
+     * @param toWrite the byte to store, as an unsigned value
+     * @return the modified ARGB pixel
+     */
+    static int embedByte(int pixel, int toWrite) {
+        return (pixel & CHANNEL_MASK)
+                | ((toWrite & 0xC0) << 18)
+                | ((toWrite & 0x30) << 12)
+                | ((toWrite & 0x0C) << 6)
+                | (toWrite & 0x03);
+    }
+
+    /**
+     * Stores a single byte in the low bits of the colour channels of an ARGB
+     * pixel, leaving alpha untouched. Bits 0-2 go to blue, 3-5 to green and 6-7
+     * to red.
+     *
+     * @param pixel   the original ARGB pixel
+     * @param toWrite the byte to store, as an unsigned value
+     * @return the modified ARGB pixel
+     */
+    static int embedRgbByte(int pixel, int toWrite) {
+        return (pixel & RGB_HEADER_MASK)
+                | ((toWrite & 0xC0) << 10)
+                | ((toWrite & 0x38) << 5)
+                | (toWrite & 0x07);
+    }
+
+    /**
+     * Stores the bits of one pixel at the given density. The lowest bits go to
+     * blue, then green, red and, if it is used, alpha.
+     *
+     * @param pixel   the original ARGB pixel
+     * @param toWrite the bits to store, {@link Density#getBitsPerPixel()} of them
+     * @param density the density to store them at
+     * @return the modified ARGB pixel
+     */
+    static int embedBits(int pixel, int toWrite, Density density) {
+        int[] spread = SPREAD[density.ordinal()];
+        return (pixel & CLEAR[density.ordinal()]) | spread[toWrite & 0xFF] | (spread[toWrite >>> 8] << 16);
+    }
+
+    // Builds the tables above one channel at a time
+    private static int embedBitsSlow(int pixel, int toWrite, Density density) {
+        int bits = density.getBitsPerChannel();
+        int mask = (1 << bits) - 1;
+        for (int shift = 0; shift < density.getChannels() * 8; shift += 8) {
+            pixel = (pixel & ~(mask << shift)) | ((toWrite & mask) << shift);
+            toWrite >>>= bits;
+        }
+        return pixel;
+    }
+
+    /**
+     * Reads back the bits stored with {@link #embedBits}.
+     *
+     * @param pixel   the ARGB pixel
+     * @param density the density the bits were stored at
+     * @return the stored bits
+     */
+    static int extractBits(int pixel, Density density) {
+        // Slide each channel's low bits down next to the previous channel's
+        int bits = density.getBitsPerChannel();
+        int mask = (1 << bits) - 1;
+        int value = (pixel & mask)
+                | ((pixel >>> (8 - bits)) & (mask << bits))
+                | ((pixel >>> (16 - 2 * bits)) & (mask << (2 * bits)));
+        if (density.getChannels() == 4)
+            value |= (pixel >>> (24 - 3 * bits)) & (mask << (3 * bits));
+        return value;
+    }
+
+    /**
+     * Reads back a byte stored with {@link #embedByte}.
+     *
+     * @param pixel the ARGB pixel
+     * @return the stored byte, as an unsigned value
+     */
+    static int extractByte(int pixel) {
+        // Fold the four 2-bit groups together in two steps
+        int folded = pixel & 0x03030303;
+        folded = (folded | (folded >>> 6)) & 0x000F000F;
+        return (folded | (folded >>> 12)) & 0xFF;
+    }
+
+    /**
+     * Reads back a byte stored with {@link #embedRgbByte}.
+     *
+     * @param pixel the ARGB pixel
+     * @return the stored byte, as an unsigned value
+     */
+    static int extractRgbByte(int pixel) {
+        return (pixel & 0x07) | ((pixel >>> 5) & 0x38) | ((pixel >>> 10) & 0xC0);
+    }
+}
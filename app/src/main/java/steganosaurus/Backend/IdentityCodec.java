@@ -0,0 +1,27 @@
+package steganosaurus.Backend;
+
+import java.io.OutputStream;
+
+/**
+ * Codec that leaves the payload untouched, see {@link PayloadCodec#NONE}.
+ */
+public final class IdentityCodec implements PayloadCodec {
+
+    // Header id of this codec
+    static final int ID = 0;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public OutputStream encoding(OutputStream out) {
+        return out;
+    }
+
+    @Override
+    public OutputStream decoding(OutputStream out) {
+        return out;
+    }
+}
@@ -0,0 +1,349 @@
+package steganosaurus.Backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checkpoints of an embed job, so a job that dies part way through carries on
+ * from where it stopped when it is run again instead of starting from zero.
+ *
+ * The journal is an append-only text file in the output directory, named after
+ * a fingerprint of the job's payload, carriers and settings. It records the
+ * stored payload, the plan of slices, and the SHA-256 of each carrier once it
+ * is written. An encoded payload is kept next to the journal, as encryption
+ * draws a fresh salt every run and the carriers already written must share
+ * theirs. A carrier is only skipped when its output still hashes to what was
+ * recorded, and a torn last line left by a crash is dropped on the next open.
+ *
+ * Both files are deleted once the job finishes.
+ */
+final class JobJournal {
+
+    // Prefix of the journal and kept payload, hidden on Unix
+    private static final String PREFIX = ".steganosaurus-";
+    private static final String MAGIC = "steganosaurus-journal 1";
+    // Hex digits of the fingerprint in the file names
+    private static final int NAME_DIGITS = 16;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path file;
+    private final Path spool;
+    private final String header;
+    private String payload;
+    private final List<String> plan = new ArrayList<String>();
+    // Recorded output hashes by carrier sequence number
+    private final Map<Integer, String> carriers = new HashMap<Integer, String>();
+
+    private JobJournal(Path file, Path spool, String header) {
+        this.file = file;
+        this.spool = spool;
+        this.header = header;
+    }
+
+    /**
+     * Opens the journal of a job, reading back what an earlier run of the same
+     * job recorded.
+     *
+     * @param directory   the directory the job writes to
+     * @param fingerprint the fingerprint of the job
+     * @return the journal
+     * @throws IOException if an existing journal cannot be read
+     */
+    static JobJournal open(File directory, byte[] fingerprint) throws IOException {
+        String hex = HEX.formatHex(fingerprint);
+        String name = PREFIX + hex.substring(0, NAME_DIGITS);
+        Path dir = directory.toPath();
+        JobJournal journal = new JobJournal(dir.resolve(name + ".journal"), dir.resolve(name + ".payload"),
+                MAGIC + " " + hex);
+        journal.load();
+        return journal;
+    }
+
+    /**
+     * Fingerprints a job by everything its plan and outputs depend on, other
+     * than the passphrase. Files are identified by path, size and modification
+     * time.
+     *
+     * @param payload    the file to hide
+     * @param carriers   the carriers, in order
+     * @param codec      the codec the payload is encoded with
+     * @param encryption the encryption id
+     * @param density    the maximum density
+     * @param format     the output format
+     * @param directory  the directory the job writes to
+     * @return the SHA-256 fingerprint
+     */
+    static byte[] fingerprint(File payload, List<File> carriers, PayloadCodec codec, int encryption,
+            Density density, CarrierFormat format, File directory) {
+        StringBuilder job = new StringBuilder();
+        job.append(describe(payload)).append('\n');
+        job.append(codec.getId()).append(' ').append(encryption).append(' ').append(density.getCode())
+                .append(' ').append(format.describe()).append('\n');
+        job.append(directory.getAbsolutePath()).append('\n');
+        for (File carrier : carriers)
+            job.append(describe(carrier)).append('\n');
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(job.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    }
+
+    /**
+     * Gets the file an encoded payload is kept in between runs.
+     *
+     * @return the kept payload
+     */
+    Path getSpool() {
+        return spool;
+    }
+
+    /**
+     * Checks whether an earlier run recorded a payload that can be used again:
+     * the kept payload is intact and, if encrypted, opens under the cipher.
+     *
+     * @param cipher the cipher of this run, or null if unencrypted
+     * @return true if the recorded payload can be used again
+     * @throws IOException if the kept payload cannot be read
+     */
+    synchronized boolean hasPayload(PayloadCipher cipher) throws IOException {
+        if (payload == null)
+            return false;
+        if (!isSpooled())
+            return true;
+        String[] fields = payload.split(" ");
+        if (!Files.isRegularFile(spool) || Files.size(spool) != Long.parseLong(fields[4]))
+            return false;
+        if (!HEX.formatHex(new PayloadDigest().hash(spool)).equals(fields[5]))
+            return false;
+        return cipher == null || cipher.opens(spool);
+    }
+
+    /**
+     * Gets the hash of the recorded payload, as written to every header.
+     *
+     * @return the payload hash
+     */
+    synchronized byte[] getIdHash() {
+        return HEX.parseHex(payload.split(" ")[1]);
+    }
+
+    /**
+     * Gets the codec the recorded payload was encoded with.
+     *
+     * @return the codec
+     */
+    synchronized PayloadCodec getCodec() {
+        return PayloadCodec.fromId(Integer.parseInt(payload.split(" ")[2]));
+    }
+
+    /**
+     * Checks whether the recorded payload is the kept one rather than the file
+     * to hide itself.
+     *
+     * @return true if the payload is kept next to the journal
+     */
+    synchronized boolean isSpooled() {
+        return payload.split(" ")[3].equals("1");
+    }
+
+    /**
+     * Starts the journal afresh with a new payload, dropping everything recorded
+     * before.
+     *
+     * @param idHash  the hash of the payload
+     * @param codec   the codec the payload is encoded with
+     * @param spooled whether the payload is the kept one
+     * @param stored  the payload as embedded
+     * @throws IOException if the journal cannot be written
+     */
+    synchronized void recordPayload(byte[] idHash, PayloadCodec codec, boolean spooled, Path stored)
+            throws IOException {
+        String hash = spooled ? HEX.formatHex(new PayloadDigest().hash(stored)) : "-";
+        payload = "payload " + HEX.formatHex(idHash) + " " + codec.getId() + " " + (spooled ? 1 : 0) + " "
+                + Files.size(stored) + " " + hash;
+        plan.clear();
+        carriers.clear();
+        rewrite();
+    }
+
+    /**
+     * Records the plan of slices. A plan that differs from the recorded one
+     * drops the carriers recorded so far.
+     *
+     * @param slices the planned slices
+     * @throws IOException if the journal cannot be written
+     */
+    synchronized void recordPlan(List<CarrierSlice> slices) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (CarrierSlice slice : slices)
+            lines.add("slice " + slice.getFileId() + " " + slice.getOffset() + " " + slice.getLength() + " "
+                    + slice.getDensity().getCode());
+        if (lines.equals(plan))
+            return;
+        plan.clear();
+        plan.addAll(lines);
+        carriers.clear();
+        rewrite();
+    }
+
+    /**
+     * Checks whether a carrier was written by an earlier run and its output is
+     * still intact.
+     *
+     * @param slice  the slice
+     * @param output the file the slice is written to
+     * @return true if the output hashes to what was recorded
+     * @throws IOException if the output cannot be read
+     */
+    boolean isDone(CarrierSlice slice, File output) throws IOException {
+        String recorded;
+        synchronized (this) {
+            recorded = carriers.get(slice.getFileId());
+        }
+        if (recorded == null || !output.isFile())
+            return false;
+        return HEX.formatHex(new PayloadDigest().hash(output.toPath())).equals(recorded);
+    }
+
+    /**
+     * Records a written carrier, forcing the line to disk.
+     *
+     * @param slice  the slice
+     * @param output the file the slice was written to
+     * @throws IOException if the output cannot be read or the journal cannot be
+     *                     written
+     */
+    void carrierDone(CarrierSlice slice, File output) throws IOException {
+        // Hashed outside the lock, carriers finish on several threads
+        String hash = HEX.formatHex(new PayloadDigest().hash(output.toPath()));
+        synchronized (this) {
+            carriers.put(slice.getFileId(), hash);
+            append("carrier " + slice.getFileId() + " " + hash + "\n");
+        }
+    }
+
+    /**
+     * Deletes the journal and the kept payload once the job has finished.
+     */
+    synchronized void finish() {
+        delete(file);
+        delete(spool);
+    }
+
+    // #region Helper functions
+
+    private static String describe(File file) {
+        return file.getAbsolutePath() + " " + file.length() + " " + file.lastModified();
+    }
+
+    // Reads back the records of an earlier run of the same job, up to the
+    // first line that is damaged or torn
+    private void load() throws IOException {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        // Only whole lines count, a crash may have cut the last one short
+        String[] lines = text.substring(0, text.lastIndexOf('\n') + 1).split("\n");
+        if (lines.length < 2 || !lines[0].equals(header) || !isRecord(lines[1], "payload", 6))
+            return;
+        payload = lines[1];
+        int valid = 2;
+        while (valid < lines.length && isRecord(lines[valid], "slice", 5))
+            plan.add(lines[valid++]);
+        while (valid < lines.length && isRecord(lines[valid], "carrier", 3)) {
+            String[] fields = lines[valid++].split(" ");
+            carriers.put(Integer.parseInt(fields[1]), fields[2]);
+        }
+        // Drop anything after the valid records, so appends start on a fresh line
+        if (valid < lines.length || !text.endsWith("\n"))
+            rewrite();
+    }
+
+    // Checks a line has the fields of its kind, so a damaged line is not trusted
+    private static boolean isRecord(String line, String kind, int fields) {
+        String[] parts = line.split(" ");
+        if (parts.length != fields || !parts[0].equals(kind))
+            return false;
+        try {
+            switch (kind) {
+                case "payload":
+                    Integer.parseInt(parts[2]);
+                    Long.parseLong(parts[4]);
+                    return isHash(parts[1]) && (parts[3].equals("0") || parts[3].equals("1"))
+                            && (isHash(parts[5]) || parts[5].equals("-"));
+                case "slice":
+                    for (int i = 1; i < fields; i++)
+                        Long.parseLong(parts[i]);
+                    return true;
+                default:
+                    Integer.parseInt(parts[1]);
+                    return isHash(parts[2]);
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isHash(String hex) {
+        return hex.length() == 64 && hex.chars().allMatch(HexFormat::isHexDigit);
+    }
+
+    // Replaces the journal with the current records in one atomic move
+    private void rewrite() throws IOException {
+        StringBuilder text = new StringBuilder(header).append('\n').append(payload).append('\n');
+        for (String line : plan)
+            text.append(line).append('\n');
+        for (Map.Entry<Integer, String> carrier : carriers.entrySet())
+            text.append("carrier ").append(carrier.getKey()).append(' ').append(carrier.getValue()).append('\n');
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel, text.toString());
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void append(String line) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            write(channel, line);
+        }
+    }
+
+    private static void write(FileChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        channel.force(false);
+    }
+
+    // Mapped files cannot be deleted on some platforms until the mapping is
+    // collected, so fall back to deleting on exit
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    // #endregion
+}
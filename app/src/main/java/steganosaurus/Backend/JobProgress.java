@@ -0,0 +1,150 @@
+package steganosaurus.Backend;
+
+import java.io.File;
+
+/**
+ * Snapshot of how far a running job has got.
+ */
+public final class JobProgress {
+
+    private final long bytesDone;
+    private final long bytesTotal;
+    private final int carriersDone;
+    private final int carriersTotal;
+    private final long elapsedNanos;
+    private final File carrier;
+    private final long carrierNanos;
+    private final long encodeNanos;
+
+    /**
+     * Constructs a JobProgress without timings for the last carrier.
+     *
+     * @param bytesDone     the payload bytes embedded or extracted so far
+     * @param bytesTotal    the payload bytes in the whole job
+     * @param carriersDone  the carriers finished so far
+     * @param carriersTotal the carriers in the whole job
+     * @param elapsedNanos  the time since the job started
+     */
+    public JobProgress(long bytesDone, long bytesTotal, int carriersDone, int carriersTotal, long elapsedNanos) {
+        this(bytesDone, bytesTotal, carriersDone, carriersTotal, elapsedNanos, null, 0, 0);
+    }
+
+    /**
+     * Constructs a JobProgress.
+     *
+     * @param bytesDone     the payload bytes embedded or extracted so far
+     * @param bytesTotal    the payload bytes in the whole job
+     * @param carriersDone  the carriers finished so far
+     * @param carriersTotal the carriers in the whole job
+     * @param elapsedNanos  the time since the job started
+     * @param carrier       the file written for the carrier that just finished,
+     *                      or null
+     * @param carrierNanos  the time spent on that carrier
+     * @param encodeNanos   the part of that time spent encoding its image
+     */
+    public JobProgress(long bytesDone, long bytesTotal, int carriersDone, int carriersTotal, long elapsedNanos,
+            File carrier, long carrierNanos, long encodeNanos) {
+        this.bytesDone = bytesDone;
+        this.bytesTotal = bytesTotal;
+        this.carriersDone = carriersDone;
+        this.carriersTotal = carriersTotal;
+        this.elapsedNanos = elapsedNanos;
+        this.carrier = carrier;
+        this.carrierNanos = carrierNanos;
+        this.encodeNanos = encodeNanos;
+    }
+
+    /**
+     * Gets the payload bytes embedded or extracted so far.
+     *
+     * @return the byte count
+     */
+    public long getBytesDone() {
+        return bytesDone;
+    }
+
+    /**
+     * Gets the payload bytes in the whole job.
+     *
+     * @return the byte count
+     */
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    /**
+     * Gets the carriers finished so far.
+     *
+     * @return the carrier count
+     */
+    public int getCarriersDone() {
+        return carriersDone;
+    }
+
+    /**
+     * Gets the carriers in the whole job.
+     *
+     * @return the carrier count
+     */
+    public int getCarriersTotal() {
+        return carriersTotal;
+    }
+
+    /**
+     * Gets the file written for the carrier that just finished.
+     *
+     * @return the carrier file, or null if the job does not write carriers
+     */
+    public File getCarrier() {
+        return carrier;
+    }
+
+    /**
+     * Gets the time spent on the carrier that just finished, from reading it to
+     * writing it out.
+     *
+     * @return the carrier time in nanoseconds, 0 if not measured
+     */
+    public long getCarrierNanos() {
+        return carrierNanos;
+    }
+
+    /**
+     * Gets the part of the carrier time spent encoding its image, which the
+     * PNG options trade against file size.
+     *
+     * @return the encode time in nanoseconds, 0 if not measured
+     */
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    /**
+     * Gets the average throughput since the job started.
+     *
+     * @return the throughput in bytes per second
+     */
+    public double getBytesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : bytesDone * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Estimates the time left at the current throughput.
+     *
+     * @return the estimate in seconds, or -1 if nothing has been done yet
+     */
+    public long getEtaSeconds() {
+        double rate = getBytesPerSecond();
+        if (rate <= 0)
+            return -1;
+        return (long) Math.ceil((bytesTotal - bytesDone) / rate);
+    }
+
+    @Override
+    public String toString() {
+        long eta = getEtaSeconds();
+        return String.format("%d/%d carriers, %.1f MB/s, ETA %s", carriersDone, carriersTotal,
+                getBytesPerSecond() / (1024.0 * 1024.0),
+                eta < 0 ? "--:--" : String.format("%d:%02d", eta / 60, eta % 60));
+    }
+}
@@ -1,16 +1,24 @@
 package steganosaurus.Backend;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
-import java.util.ArrayList;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
 
-import steganosaurus.GUI.MainWindow;
-
+/**
+ * Holds the file and carriers of a job and runs it. The backend knows nothing
+ * about Swing, state changes are reported to a {@link BackendListener} so the
+ * same backend drives both the GUI and the command line.
+ */
 public class MainBackend {
 
     // Status codes for backend process
@@ -18,6 +26,7 @@ public class MainBackend {
         IDLE,
         RUNNING,
         DONE,
+        CANCELLED,
     }
 
     // Mode for backend process
@@ -27,21 +36,40 @@ public class MainBackend {
     }
 
     // Constants
-    public static final int HEADER_SIZE = 84;
+    public static final int HEADER_SIZE = CarrierHeader.SIZE;
+    // Size of the buffer in front of the encoded payload spool
+    private static final int SPOOL_BUFFER_SIZE = 1 << 16;
 
     // Private variables
     private File selectedFile;
     private ArrayList<File> carriers = new ArrayList<File>();
-    private MainWindow frontend;
+    // Capacity of each carrier, in the same order as carriers
+    private ArrayList<Long> carrierCapacities = new ArrayList<Long>();
+    private long totalCapacity = 0;
+    private final CapacityIndex capacityIndex = new CapacityIndex();
+    // Null when caching is turned off
+    private CarrierCache carrierCache = new CarrierCache(CarrierCache.DEFAULT_BUDGET, true);
+    private boolean resumable = true;
+    private BackendListener frontend;
     private int selectedCarrierIndex = -1;
     private Mode mode = Mode.ENCRYPTION;
+    private int parallelism = CarrierEncoder.DEFAULT_PARALLELISM;
+    private long memoryBudget = CarrierEncoder.DEFAULT_MEMORY_BUDGET;
+    private Density density = Density.DEFAULT;
+    private PayloadCodec codec = new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+    private CarrierFormat format = new PngFormat(PngOptions.DEFAULT);
+    // Null unless a passphrase has been set
+    private PayloadCipher cipher = null;
+    // Null to write outputs next to the carriers
+    private File outputDirectory = null;
+    private final PayloadDigest payloadDigest = new PayloadDigest();
 
     /**
      * Constructor for MainBackend.
      *
-     * @param frontend the MainWindow instance that interacts with this backend
+     * @param frontend the listener that shows the state of this backend
      */
-    public MainBackend(MainWindow frontend) {
+    public MainBackend(BackendListener frontend) {
         this.frontend = frontend;
         updateStatus(Status.IDLE);
         selectFile(null);
@@ -60,6 +88,9 @@ public class MainBackend {
             case DONE:
                 frontend.setStatus("Done");
                 break;
+            case CANCELLED:
+                frontend.setStatus("Cancelled");
+                break;
             default:
                 throw new IllegalStateException("Unexpected value: " + status);
         }
@@ -94,7 +125,10 @@ public class MainBackend {
         for (File carrier : newCarriers) {
             if (carrier == null || !carrier.exists() || !carrier.isFile())
                 throw new IllegalArgumentException("Invalid carrier file: " + carrier);
+            long capacity = carrierCapacity(carrier);
             carriers.add(carrier);
+            carrierCapacities.add(capacity);
+            totalCapacity += capacity;
             frontend.addCarrier(carrier.getName(), carrier.length());
         }
         updateTotalBytes(calculateTotalBytes());
@@ -117,9 +151,10 @@ public class MainBackend {
      * If no carrier is selected, this method does nothing.
      */
     public void deleteCarrier() {
-        if (selectedCarrierIndex < 0 || selectedCarrierIndex > carriers.size())
+        if (selectedCarrierIndex < 0 || selectedCarrierIndex >= carriers.size())
             return;
         carriers.remove(selectedCarrierIndex);
+        totalCapacity -= carrierCapacities.remove(selectedCarrierIndex);
         frontend.removeCarrier(selectedCarrierIndex);
         selectedCarrierIndex = -1; // Reset selection
         updateTotalBytes(calculateTotalBytes());
@@ -131,12 +166,24 @@ public class MainBackend {
      */
     public void clearCarriers() {
         carriers.clear();
+        carrierCapacities.clear();
+        totalCapacity = 0;
         frontend.clearCarriers();
         selectedCarrierIndex = -1;
         updateTotalBytes(0);
         updateNeededBytes(calculateNeededBytes());
     }
 
+    /**
+     * Switches between hiding a file in the carriers and recovering a file from
+     * them.
+     */
+    public void switchMode() {
+        mode = mode == Mode.ENCRYPTION ? Mode.DECRYPTION : Mode.ENCRYPTION;
+        frontend.setMode(mode == Mode.ENCRYPTION ? "Encrypt" : "Decrypt");
+        updateStatus(Status.IDLE);
+    }
+
     public String getMode() {
         if (mode == Mode.ENCRYPTION)
             return "encrypted";
@@ -144,83 +191,335 @@ public class MainBackend {
     }
 
     /**
-     * Runs the main backend process to encrypt the file. It will return a true or
-     * false depending on whether the process was successful or not.
+     * Sets the maximum number of carriers encoded at once.
+     *
+     * @param parallelism the worker count, at least 1
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the maximum estimated bytes of decoded carrier images held in memory
+     * at once while encoding.
+     *
+     * @param memoryBudget the budget in bytes
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 1)
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Sets the densest packing the payload may use. Sparser packings with the
+     * same channels are used for carriers that do not need the full density.
+     *
+     * @param density the maximum density
+     */
+    public void setDensity(Density density) {
+        if (density == null)
+            throw new IllegalArgumentException("Density must not be null.");
+        this.density = density;
+        // Capacities depend on the density, so recount them
+        totalCapacity = 0;
+        for (int i = 0; i < carriers.size(); i++) {
+            long capacity = carrierCapacity(carriers.get(i));
+            carrierCapacities.set(i, capacity);
+            totalCapacity += capacity;
+        }
+        updateTotalBytes(calculateTotalBytes());
+        updateNeededBytes(calculateNeededBytes());
+    }
+
+    /**
+     * Sets the codec the payload is encoded with before it is embedded. Payloads
+     * the codec does not shrink are embedded as they are.
+     *
+     * @param codec the codec, {@link PayloadCodec#NONE} to embed the payload as
+     *              it is
+     */
+    public void setCodec(PayloadCodec codec) {
+        if (codec == null)
+            throw new IllegalArgumentException("Codec must not be null.");
+        this.codec = codec;
+    }
+
+    /**
+     * Sets the format the encoded carriers are written in, trading file size for
+     * speed.
+     *
+     * @param format the output format
+     */
+    public void setFormat(CarrierFormat format) {
+        if (format == null)
+            throw new IllegalArgumentException("Format must not be null.");
+        this.format = format;
+        // Formats may cap what a carrier can hold, so recount the capacities
+        setDensity(density);
+    }
+
+    /**
+     * Sets the passphrase the payload is encrypted with when hiding, and
+     * decrypted with when recovering.
+     *
+     * @param passphrase the passphrase, copied so the caller can clear theirs,
+     *                   or null or empty to store the payload unencrypted
+     */
+    public void setPassphrase(char[] passphrase) {
+        cipher = passphrase == null || passphrase.length == 0 ? null : new PayloadCipher(passphrase);
+    }
+
+    /**
+     * Sets the directory encoded carriers and recovered files are written to.
+     *
+     * @param outputDirectory the directory, or null to write encoded carriers
+     *                        next to their originals and recovered files next to
+     *                        the first carrier
+     */
+    public void setOutputDirectory(File outputDirectory) {
+        if (outputDirectory != null && !outputDirectory.isDirectory())
+            throw new IllegalArgumentException("Not a directory: " + outputDirectory);
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Sets whether embed jobs keep a journal of the carriers they have written,
+     * so a job that fails or is stopped part way through skips those carriers
+     * when it is run again.
+     *
+     * @param resumable true to journal jobs, false to always start from zero
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * Sets how many bytes of decoded carriers are kept between runs, so running
+     * again against the same carriers skips decoding them. Cached carriers are
+     * held through soft references and dropped if the heap runs low.
+     *
+     * @param budget the cache budget in bytes, or 0 to turn caching off
+     */
+    public void setCacheBudget(long budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("Cache budget must not be negative: " + budget);
+        carrierCache = budget == 0 ? null : new CarrierCache(budget, true);
+    }
+
+    /**
+     * Gets the hit, miss and eviction counts of the decoded carrier cache.
+     *
+     * @return the statistics, or null if caching is turned off
+     */
+    public CarrierCache.Stats getCacheStats() {
+        CarrierCache cache = carrierCache;
+        return cache == null ? null : cache.getStats();
+    }
+
+    /**
+     * Gets the payload bytes a carrier can hold at the maximum density, from the
+     * cached capacity index.
+     *
+     * @param carrier the carrier image
+     * @return the capacity in bytes, negative if the image is too small to hold
+     *         a header
+     * @throws IOException     if the carrier cannot be read
+     * @throws SteganException if the carrier is not a readable image
+     */
+    public long capacityOf(File carrier) throws IOException, SteganException {
+        return format.capacity(capacityIndex.capacityOf(carrier), density);
+    }
+
+    /**
+     * Gets the payload bytes the added carriers can hold together.
+     *
+     * @return the total capacity in bytes
+     */
+    public long getTotalCapacity() {
+        return totalCapacity;
+    }
+
+    /**
+     * Reads the header of an image without decoding the whole image.
+     *
+     * @param file the image to probe
+     * @return the header, or null if the image holds no hidden data
+     */
+    public CarrierHeader probe(File file) {
+        return CarrierProbe.probe(file, capacityIndex);
+    }
+
+    /**
+     * Reads the header of every image in a directory without decoding the whole
+     * images.
+     *
+     * @param directory the directory to probe
+     * @return the header of every file holding hidden data, in file name order
+     * @throws SteganException if the directory cannot be listed
+     */
+    public Map<File, CarrierHeader> probeDirectory(File directory) throws SteganException {
+        return CarrierProbe.probeDirectory(directory, parallelism, capacityIndex);
+    }
+
+    /**
+     * Runs the main backend process without reporting progress.
      * 
-     * @return true if the process was successful, false otherwise
+     * @return the directory the output files were written to
+     * @see #run(ProgressListener)
      */
     public File run() throws IOException, SteganException {
-        if (mode == Mode.ENCRYPTION) {
-            byte fileData[] = Files.readAllBytes(selectedFile.toPath());
-            ArrayList<Byte> fileDataList = new ArrayList<Byte>();
-            // Converted to List for easier manipulation
-            for (byte b : fileData) {
-                fileDataList.add(b);
+        return run(null);
+    }
+
+    /**
+     * Runs the main backend process. In encryption mode the selected file is
+     * hidden in the carriers, in decryption mode the hidden file is recovered from
+     * them.
+     *
+     * This is meant to be called off the event dispatch thread. Interrupting the
+     * calling thread cancels the job.
+     * 
+     * @param listener the listener to report finished carriers to, or null
+     * @return the directory the output files were written to
+     */
+    public File run(ProgressListener listener) throws IOException, SteganException {
+        // Work on a snapshot so edits to the carrier list cannot race with the job
+        List<File> jobCarriers = new ArrayList<File>(carriers);
+        File jobFile = selectedFile;
+        updateStatus(Status.RUNNING);
+        BackendMetrics metrics = BackendMetrics.get();
+        metrics.jobStarted();
+        BackendEvents.JobEvent event = new BackendEvents.JobEvent();
+        event.begin();
+        long started = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            File output = mode == Mode.ENCRYPTION ? encrypt(jobFile, jobCarriers, listener)
+                    : decrypt(jobCarriers, listener);
+            succeeded = true;
+            updateStatus(Status.DONE);
+            return output;
+        } catch (IOException | SteganException | RuntimeException e) {
+            updateStatus(Thread.currentThread().isInterrupted() ? Status.CANCELLED : Status.IDLE);
+            throw e;
+        } finally {
+            metrics.jobFinished(succeeded, System.nanoTime() - started);
+            event.end();
+            if (event.shouldCommit()) {
+                event.mode = getMode();
+                event.carriers = jobCarriers.size();
+                event.succeeded = succeeded;
+                event.commit();
             }
-            // for each file
-            for (int i = 0; i < carriers.size(); i++) {
-                File carrier = carriers.get(i);
-                // Calculate the space available in bytes for that specific carrier
-                BufferedImage image = ImageIO.read(carrier);
-                if (image == null)
-                    throw new SteganException("Cannot read image from carrier file: " + carrier.getName());
-                int width = image.getWidth();
-                int height = image.getHeight();
-                long totalPixels = width * height;
-                long availableBytes = totalPixels - HEADER_SIZE;
-                // If carrier is too small, throw a Steganexception
-                if (availableBytes <= 0)
-                    throw new SteganException("Carrier file " + carrier.getName() + " is too small to hold any data.");
-                // Create a header for that file
-                byte[] header = createHeader(carrier, i);
-                ArrayList<Byte> headerList = new ArrayList<Byte>();
-                for (byte b : header) {
-                    headerList.add(b);
+        }
+    }
+
+    // #region Helper functions
+    private File encrypt(File file, List<File> jobCarriers, ProgressListener listener)
+            throws IOException, SteganException {
+        if (file == null)
+            throw new SteganException("No file has been selected.");
+        PayloadCodec jobCodec = codec;
+        PayloadCipher jobCipher = cipher;
+        CarrierFormat jobFormat = format;
+        File jobOutput = outputDirectory;
+        CarrierCache jobCache = carrierCache;
+        int encryption = jobCipher == null ? PayloadCipher.NONE : PayloadCipher.AES_GCM;
+        if (jobCarriers.isEmpty())
+            throw new SteganException("No carrier files have been added.");
+        File directory = jobOutput != null ? jobOutput : jobCarriers.get(0).getAbsoluteFile().getParentFile();
+        JobJournal journal = resumable ? JobJournal.open(directory, JobJournal.fingerprint(file, jobCarriers,
+                jobCodec, encryption, density, jobFormat, directory)) : null;
+        Path stored = file.toPath();
+        Path spool = null;
+        boolean encoding = false;
+        try {
+            byte[] idHash;
+            boolean resumed = journal != null && journal.hasPayload(jobCipher);
+            if (resumed) {
+                // Carry on with the payload an earlier run of this job stored
+                idHash = journal.getIdHash();
+                jobCodec = journal.getCodec();
+                if (journal.isSpooled())
+                    stored = journal.getSpool();
+            } else if (jobCodec.getId() == PayloadCodec.NONE.getId() && jobCipher == null) {
+                // Hash the payload once, every header shares the result
+                StageTimer timer = StageTimer.start(Stage.HASH);
+                idHash = payloadDigest.hash(stored);
+                timer.stop(Files.size(stored));
+            } else {
+                // Encode into a temporary file in the same pass as the hash, so
+                // the stored length is known before planning
+                // A journaled job keeps the encoded payload next to its journal
+                spool = journal != null ? journal.getSpool() : Files.createTempFile("steganosaurus", ".payload");
+                StageTimer timer = StageTimer.start(Stage.SPOOL);
+                idHash = spoolPayload(stored, spool, jobCodec, jobCipher);
+                // Payloads that do not shrink are stored without the codec
+                long plainLength = Files.size(stored);
+                long uncoded = jobCipher == null ? plainLength
+                        : PayloadCipher.encryptedLength(plainLength, file.getName());
+                if (jobCodec.getId() != PayloadCodec.NONE.getId() && Files.size(spool) >= uncoded) {
+                    jobCodec = PayloadCodec.NONE;
+                    if (jobCipher != null)
+                        idHash = spoolPayload(stored, spool, jobCodec, jobCipher);
                 }
-                ArrayList<Byte> fileDataToWrite = new ArrayList<Byte>();
-                fileDataToWrite.addAll(headerList);
-                fileDataToWrite.addAll(fileDataList);
-                // For each pixel in the image
-                for (int y = 0; y < height; y++) {
-                    for (int x = 0; x < width; x++) {
-                        // Get the pixel colour
-                        int pixel = image.getRGB(x, y);
-                        int r = (pixel >> 16) & 0xFF;
-                        int g = (pixel >> 8) & 0xFF;
-                        int b = pixel & 0xFF;
-                        int a = (pixel >> 24) & 0xFF;
-
-                        // Store 2 bits of data in each colour channel
-                        int toWrite = fileDataToWrite.remove(0) & 0xFF;
-                        b = (b & 0xFC) | (toWrite & 0x03);
-                        g = (g & 0xFC) | ((toWrite >> 2) & 0x03);
-                        r = (r & 0xFC) | ((toWrite >> 4) & 0x03);
-                        a = (a & 0xFC) | ((toWrite >> 6) & 0x03);
-
-                        // Set the modified pixel back to the image
-                        image.setRGB(x, y, (a << 24) | (r << 16) | (g << 8) | b);
-
-                        // If we have no more data to write, break out of the loop
-                        if (fileDataToWrite.isEmpty())
-                            break;
-                    }
-                    // Same here
-                    if (fileDataToWrite.isEmpty())
-                        break;
+                if (jobCodec.getId() != PayloadCodec.NONE.getId() || jobCipher != null)
+                    stored = spool;
+                timer.stop(plainLength);
+            }
+            if (journal != null && !resumed)
+                journal.recordPayload(idHash, jobCodec, stored.equals(spool), stored);
+            // Map the payload rather than reading it, carriers page in their own slice
+            try (PayloadSource payload = new MappedPayloadSource(stored)) {
+                // Give each carrier its own slice of the payload
+                StageTimer timer = StageTimer.start(Stage.PLAN);
+                List<CarrierSlice> slices = ChunkPlanner.plan(payload.length(), jobCarriers, capacityIndex,
+                        density, jobFormat);
+                timer.stop(payload.length());
+                if (journal != null)
+                    journal.recordPlan(slices);
+                List<CarrierSlice> pending = new ArrayList<CarrierSlice>();
+                List<byte[]> headers = new ArrayList<byte[]>();
+                for (CarrierSlice slice : slices) {
+                    // Carriers an earlier run wrote are kept while they are intact
+                    File output = CarrierEncoder.outputFile(slice.getCarrier(), jobFormat, jobOutput);
+                    if (journal != null && journal.isDone(slice, output))
+                        continue;
+                    pending.add(slice);
+                    headers.add(createHeader(file, slice, idHash, payload.length(), jobCodec, encryption));
                 }
-                // Outside the loop, add this carrier to the encrypted files list
-                File encryptedFile = new File(carrier.getParent(), "encrypted_" + carrier.getName());
-                ImageIO.write(image, "png", encryptedFile);
+                // Carriers are independent once sliced, so encode them concurrently
+                encoding = true;
+                new CarrierEncoder(parallelism, memoryBudget, jobFormat, jobOutput, jobCache, capacityIndex)
+                        .encode(pending, headers, payload, listener, journal);
             }
-            return carriers.get(0).getParentFile();
-        } else {
-            // Decryption process
-            // Go through each carrier file and unpack the data into a header
+            if (journal != null)
+                journal.finish();
+        } finally {
+            // A job that fails before writing any carrier has nothing to resume
+            if (journal != null && !encoding)
+                journal.finish();
+            // An unfinished journaled job keeps its encoded payload for the next run
+            if (spool != null && (journal == null || !stored.equals(spool)))
+                deleteSpool(spool);
         }
-        return null;
+        return jobOutput != null ? jobOutput : jobCarriers.get(0).getAbsoluteFile().getParentFile();
+    }
+
+    // Unless an output directory is set, the hidden file is written next to the first carrier
+    private File decrypt(List<File> jobCarriers, ProgressListener listener) throws IOException, SteganException {
+        if (jobCarriers.isEmpty())
+            throw new SteganException("No carrier files have been added.");
+        File jobOutput = outputDirectory != null ? outputDirectory
+                : jobCarriers.get(0).getAbsoluteFile().getParentFile();
+        new CarrierDecoder(parallelism, memoryBudget, cipher, carrierCache, capacityIndex).decode(jobCarriers,
+                jobOutput, listener);
+        return jobOutput;
     }
 
-    // #region Helper functions
     private void updateFileSize(long size) {
         frontend.setFileSize(size);
     }
@@ -234,12 +533,17 @@ public class MainBackend {
     }
 
     private long calculateTotalBytes() {
-        long totalBytes = 0;
-        for (File carrier : carriers) {
-            if (carrier.exists() && carrier.isFile())
-                totalBytes += carrier.length();
+        return totalCapacity;
+    }
+
+    // Gets the payload bytes a carrier can hold, counting unreadable or tiny
+    // images as zero so they show up as unusable rather than failing here
+    private long carrierCapacity(File carrier) {
+        try {
+            return Math.max(0, capacityOf(carrier));
+        } catch (IOException | SteganException e) {
+            return 0;
         }
-        return totalBytes;
     }
 
     private long calculateNeededBytes() {
@@ -248,54 +552,60 @@ public class MainBackend {
         return neededBytes > 0 ? neededBytes : 0;
     }
 
-    private byte[] hashFile(File file) {
+    // Writes the payload through the codec and cipher into the spool, returning
+    // the hash for the headers: of the payload itself, or once encrypted of the
+    // spool, so the clear headers give nothing away about the hidden file
+    private byte[] spoolPayload(Path file, Path spool, PayloadCodec payloadCodec, PayloadCipher payloadCipher)
+            throws IOException {
+        MessageDigest stored = null;
+        OutputStream out = Files.newOutputStream(spool);
+        if (payloadCipher != null) {
+            try {
+                stored = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                out.close();
+                throw new RuntimeException("SHA-256 algorithm not found", e);
+            }
+            out = new DigestOutputStream(out, stored);
+        }
+        out = new BufferedOutputStream(out, SPOOL_BUFFER_SIZE);
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] fileBytes = Files.readAllBytes(file.toPath());
-            return digest.digest(fileBytes);
+            if (payloadCipher != null)
+                out = payloadCipher.encrypting(out, file.getFileName().toString());
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+        byte[] hash;
+        try (OutputStream encoded = payloadCodec.encoding(out)) {
+            hash = payloadDigest.hash(file, encoded);
+        }
+        return stored != null ? stored.digest() : hash;
+    }
+
+    // Mapped files cannot be deleted on some platforms until the mapping is
+    // collected, so fall back to deleting on exit
+    private static void deleteSpool(Path spool) {
+        try {
+            Files.deleteIfExists(spool);
         } catch (IOException e) {
-            throw new RuntimeException("Error reading file for SHA-256 hash", e);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not found", e);
+            spool.toFile().deleteOnExit();
         }
     }
 
-    private byte[] createHeader(File file, int fileId) {
-        byte[] idHash = hashFile(file);
-        // Process fileName
-        String fileName = file.getName();
+    private byte[] createHeader(File file, CarrierSlice slice, byte[] idHash, long storedLength,
+            PayloadCodec payloadCodec, int encryption) {
+        // Split the file name into name and extension, encrypted payloads carry it sealed instead
+        String fileName = encryption == PayloadCipher.NONE ? file.getName() : "";
         int dotIndex = fileName.lastIndexOf('.');
         String fileExtension = "";
         if (dotIndex != -1) {
             fileName = fileName.substring(0, dotIndex);
             fileExtension = file.getName().substring(dotIndex + 1);
         }
-        fileName = fileName.length() > 32 ? fileName.substring(0, 32) : fileName;
-        // Pad fileName to 32 bytes
-        byte[] fileNameBytes = new byte[32];
-        System.arraycopy(fileName.getBytes(), 0, fileNameBytes, 0, Math.min(fileName.length(), 32));
-        // Pad fileExtension to 8 bytes
-        byte[] fileExtensionBytes = new byte[8];
-        System.arraycopy(fileExtension.getBytes(), 0, fileExtensionBytes, 0, Math.min(fileExtension.length(), 8));
-        // Get file size as 64-bit integer
-        long fileSize = file.length();
-        byte[] fileSizeBytes = new byte[8];
-        for (int i = 0; i < 8; i++) {
-            fileSizeBytes[i] = (byte) (fileSize >> (8 * (7 - i)));
-        }
-        // Get file ID as 32-bit integer
-        byte[] fileIdBytes = new byte[4];
-        for (int i = 0; i < 4; i++) {
-            fileIdBytes[i] = (byte) (fileId >> (8 * (3 - i)));
-        }
-        // Create the header
-        byte[] header = new byte[84];
-        System.arraycopy(idHash, 0, header, 0, idHash.length);
-        System.arraycopy(fileNameBytes, 0, header, 32, fileNameBytes.length);
-        System.arraycopy(fileExtensionBytes, 0, header, 64, fileExtensionBytes.length);
-        System.arraycopy(fileSizeBytes, 0, header, 72, fileSizeBytes.length);
-        System.arraycopy(fileIdBytes, 0, header, 80, fileIdBytes.length);
-        return header;
+        CarrierHeader header = new CarrierHeader(idHash, fileName, fileExtension, storedLength,
+                slice.getFileId(), slice.getOffset(), slice.getLength(), slice.getDensity(), payloadCodec, encryption);
+        return header.toBytes();
     }
 
     // #endregion
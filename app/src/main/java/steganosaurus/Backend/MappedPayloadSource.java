@@ -0,0 +1,47 @@
+package steganosaurus.Backend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Payload source over a memory-mapped file. Each slice is mapped when a carrier
+ * asks for it and paged in by the OS as the carrier consumes it, so payloads of
+ * any size embed with a small, fixed heap footprint.
+ */
+public class MappedPayloadSource implements PayloadSource {
+
+    private final FileChannel channel;
+    private final long length;
+
+    /**
+     * Constructs a MappedPayloadSource and opens the file.
+     *
+     * @param file the payload file
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedPayloadSource(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        length = channel.size();
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public ByteBuffer slice(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset > this.length - length)
+            throw new IndexOutOfBoundsException("Invalid payload slice: " + offset + "+" + length);
+        // Mappings stay valid after the channel is closed and are released by the GC
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,385 @@
+package steganosaurus.Backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypts the payload with AES-256-GCM under a key derived from a passphrase
+ * with PBKDF2. The payload is cut into fixed-size chunks, each sealed with its
+ * own nonce and tag, so a payload of any size is processed with one chunk in
+ * memory and a damaged chunk is caught as soon as its bytes arrive.
+ *
+ * The encrypted stream starts with the salt, the PBKDF2 iteration count and
+ * the nonce prefix. Each chunk's nonce is the prefix followed by the chunk
+ * number, and the last chunk is marked in its associated data, so chunks cannot
+ * be reordered, dropped or cut off without failing a tag.
+ *
+ * The first plaintext bytes are the name of the hidden file, a two-byte length
+ * followed by UTF-8, so the name is sealed with the payload instead of being
+ * stored in the clear header.
+ */
+public final class PayloadCipher {
+
+    // Header ids of the payload encryption
+    public static final int NONE = 0;
+    public static final int AES_GCM = 1;
+    // PBKDF2 iterations used for new payloads
+    public static final int DEFAULT_ITERATIONS = 600_000;
+    // Plaintext bytes in every chunk but the last
+    static final int CHUNK_SIZE = 1 << 16;
+    // Size of the GCM tag after each chunk
+    static final int TAG_SIZE = 16;
+    private static final int SALT_SIZE = 16;
+    private static final int NONCE_PREFIX_SIZE = 8;
+    // Longest name the two-byte length can hold
+    private static final int MAX_NAME_SIZE = 0xFFFF;
+    private static final int NONCE_SIZE = NONCE_PREFIX_SIZE + 4;
+    // Salt, iteration count and nonce prefix before the first chunk
+    static final int PREFIX_SIZE = SALT_SIZE + 4 + NONCE_PREFIX_SIZE;
+    private static final int KEY_BITS = 256;
+    // Upper bound on the iterations read back, so a damaged prefix cannot stall the decoder
+    private static final int MAX_ITERATIONS = 10_000_000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final char[] passphrase;
+    private final int iterations;
+
+    /**
+     * Constructs a PayloadCipher with the default iteration count.
+     *
+     * @param passphrase the passphrase, copied so the caller can clear theirs
+     */
+    public PayloadCipher(char[] passphrase) {
+        this(passphrase, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Constructs a PayloadCipher.
+     *
+     * @param passphrase the passphrase, copied so the caller can clear theirs
+     * @param iterations the PBKDF2 iterations used when encrypting
+     */
+    public PayloadCipher(char[] passphrase, int iterations) {
+        if (passphrase == null || passphrase.length == 0)
+            throw new IllegalArgumentException("Passphrase must not be empty.");
+        if (iterations < 1 || iterations > MAX_ITERATIONS)
+            throw new IllegalArgumentException("Iterations must be 1 to " + MAX_ITERATIONS + ": " + iterations);
+        this.passphrase = passphrase.clone();
+        this.iterations = iterations;
+    }
+
+    /**
+     * Returns whether a header encryption id is one this program can read.
+     *
+     * @param id the encryption id
+     * @return true for {@link #NONE} and {@link #AES_GCM}
+     */
+    public static boolean isKnown(int id) {
+        return id == NONE || id == AES_GCM;
+    }
+
+    /**
+     * Gets the length of a payload once encrypted.
+     *
+     * @param length the payload length
+     * @param name   the name of the hidden file
+     * @return the encrypted length, prefix, name and tags included
+     */
+    public static long encryptedLength(long length, String name) {
+        length += 2 + name.getBytes(StandardCharsets.UTF_8).length;
+        long chunks = Math.max(1, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        return PREFIX_SIZE + length + chunks * TAG_SIZE;
+    }
+
+    /**
+     * Wraps a stream so bytes written to it are encrypted on their way to it.
+     * The prefix is written straight away and the name is sealed ahead of the
+     * payload. Closing the returned stream seals the last chunk and closes the
+     * wrapped stream.
+     *
+     * @param out  the stream to write the encrypted payload to
+     * @param name the name of the hidden file
+     * @return the stream to write the payload to
+     * @throws IOException if the prefix cannot be written
+     */
+    public OutputStream encrypting(OutputStream out, String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME_SIZE)
+            throw new IllegalArgumentException("File name is too long to encrypt: " + name);
+        byte[] prefix = new byte[PREFIX_SIZE];
+        RANDOM.nextBytes(prefix);
+        writeInt(prefix, SALT_SIZE, iterations);
+        ChunkStream stream = new ChunkStream(out, Cipher.ENCRYPT_MODE, CHUNK_SIZE);
+        stream.start(prefix);
+        out.write(prefix);
+        stream.write(bytes.length >> 8);
+        stream.write(bytes.length);
+        stream.write(bytes);
+        return stream;
+    }
+
+    /**
+     * Wraps a stream so bytes written to it are decrypted and checked on their
+     * way to it. Closing the returned stream checks the last chunk and closes the
+     * wrapped stream. The returned stream throws {@link TamperedException} for a
+     * chunk that fails its tag.
+     *
+     * @param out  the stream to write the decrypted payload to
+     * @param name called with the name of the hidden file once it is decrypted,
+     *             before any of the payload reaches the wrapped stream
+     * @return the stream to write the encrypted payload to
+     */
+    public OutputStream decrypting(OutputStream out, Consumer<String> name) {
+        return new ChunkStream(new NameStream(out, name), Cipher.DECRYPT_MODE, CHUNK_SIZE + TAG_SIZE);
+    }
+
+    /**
+     * Checks whether an encrypted payload was sealed under this passphrase, by
+     * opening its first chunk.
+     *
+     * @param encrypted the encrypted payload
+     * @return true if the first chunk passes its tag
+     * @throws IOException if the payload cannot be read
+     */
+    public boolean opens(Path encrypted) throws IOException {
+        long length = Files.size(encrypted);
+        // One byte past the first chunk makes it open as a chunk that is not the last
+        int probe = (int) Math.min(length, PREFIX_SIZE + CHUNK_SIZE + TAG_SIZE + 1);
+        byte[] data = new byte[probe];
+        try (InputStream in = Files.newInputStream(encrypted)) {
+            if (in.readNBytes(data, 0, probe) < probe)
+                return false;
+        }
+        OutputStream stream = new ChunkStream(OutputStream.nullOutputStream(), Cipher.DECRYPT_MODE,
+                CHUNK_SIZE + TAG_SIZE);
+        try {
+            stream.write(data);
+            if (probe == length)
+                stream.close();
+            return true;
+        } catch (TamperedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Thrown when a chunk fails its tag, because the passphrase is wrong or the
+     * encrypted payload was changed.
+     */
+    public static final class TamperedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private TamperedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    // #region Helper functions
+
+    private SecretKey deriveKey(byte[] salt, int rounds) {
+        PBEKeySpec spec = new PBEKeySpec(passphrase, salt, rounds, KEY_BITS);
+        try {
+            byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            try {
+                return new SecretKeySpec(key, "AES");
+            } finally {
+                Arrays.fill(key, (byte) 0);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("PBKDF2 algorithm not found", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >> 24);
+        data[offset + 1] = (byte) (value >> 16);
+        data[offset + 2] = (byte) (value >> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    // Strips the name off the front of the decrypted stream and hands it over
+    // before passing the payload through
+    private static final class NameStream extends OutputStream {
+        private final OutputStream out;
+        private final Consumer<String> consumer;
+        private final byte[] length = new byte[2];
+        private byte[] name;
+        private int count = 0;
+
+        private NameStream(OutputStream out, Consumer<String> consumer) {
+            this.out = out;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (name == null && length > 0) {
+                this.length[count++] = data[offset++];
+                length--;
+                if (count == 2) {
+                    name = new byte[((this.length[0] & 0xFF) << 8) | (this.length[1] & 0xFF)];
+                    count = 0;
+                    if (name.length == 0)
+                        consumer.accept("");
+                }
+            }
+            if (name != null && count < name.length) {
+                int copied = Math.min(length, name.length - count);
+                System.arraycopy(data, offset, name, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+                if (count == name.length)
+                    consumer.accept(new String(name, StandardCharsets.UTF_8));
+            }
+            if (length > 0)
+                out.write(data, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (name == null || count < name.length)
+                    throw new IOException("Encrypted payload ends before the file name.");
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // Buffers one chunk at a time. A full chunk is only sealed or opened once
+    // more bytes arrive, so the chunk left at close is the one marked last.
+    private final class ChunkStream extends OutputStream {
+        private final OutputStream out;
+        private final int mode;
+        private final Cipher cipher;
+        private final byte[] chunk;
+        private final byte[] result = new byte[CHUNK_SIZE + TAG_SIZE];
+        private final byte[] nonce = new byte[NONCE_SIZE];
+        private final byte[] prefix = new byte[PREFIX_SIZE];
+        private SecretKey key;
+        private int prefixCount = 0;
+        private int count = 0;
+        private long chunkIndex = 0;
+        private boolean closed = false;
+
+        private ChunkStream(OutputStream out, int mode, int chunkSize) {
+            this.out = out;
+            this.mode = mode;
+            this.chunk = new byte[chunkSize];
+            try {
+                cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("AES-GCM algorithm not found", e);
+            }
+        }
+
+        // Derives the key and nonce prefix from a complete stream prefix
+        private void start(byte[] streamPrefix) throws IOException {
+            System.arraycopy(streamPrefix, 0, prefix, 0, PREFIX_SIZE);
+            prefixCount = PREFIX_SIZE;
+            int rounds = readInt(prefix, SALT_SIZE);
+            if (rounds < 1 || rounds > MAX_ITERATIONS)
+                throw new TamperedException("Encrypted payload has an invalid prefix.", null);
+            key = deriveKey(Arrays.copyOfRange(prefix, 0, SALT_SIZE), rounds);
+            System.arraycopy(prefix, SALT_SIZE + 4, nonce, 0, NONCE_PREFIX_SIZE);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (closed)
+                throw new IOException("Stream is closed.");
+            // Decryption reads the prefix off the front of the stream
+            if (prefixCount < PREFIX_SIZE) {
+                int copied = Math.min(length, PREFIX_SIZE - prefixCount);
+                System.arraycopy(data, offset, prefix, prefixCount, copied);
+                prefixCount += copied;
+                offset += copied;
+                length -= copied;
+                if (prefixCount == PREFIX_SIZE)
+                    start(prefix);
+            }
+            while (length > 0) {
+                if (count == chunk.length)
+                    process(false);
+                int copied = Math.min(length, chunk.length - count);
+                System.arraycopy(data, offset, chunk, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            // A failed tag outranks anything closing the wrapped stream reports
+            try (out) {
+                if (key == null)
+                    throw new TamperedException("Encrypted payload is shorter than its prefix.", null);
+                process(true);
+                out.flush();
+            }
+        }
+
+        private void process(boolean last) throws IOException {
+            if (chunkIndex > 0xFFFFFFFFL)
+                throw new IOException("Payload is too large to encrypt.");
+            writeInt(nonce, NONCE_PREFIX_SIZE, (int) chunkIndex);
+            try {
+                cipher.init(mode, key, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+                cipher.updateAAD(new byte[] { (byte) (last ? 1 : 0) });
+                int length = cipher.doFinal(chunk, 0, count, result, 0);
+                out.write(result, 0, length);
+            } catch (AEADBadTagException e) {
+                throw new TamperedException("Encrypted chunk " + chunkIndex + " failed its tag.", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Cannot process encrypted chunk " + chunkIndex + ".", e);
+            }
+            chunkIndex++;
+            count = 0;
+        }
+    }
+
+    // #endregion
+}
@@ -0,0 +1,61 @@
+package steganosaurus.Backend;
+
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * A reversible transform applied to the payload before it is embedded, such as
+ * compression. Both directions are streams, so a payload of any size is coded
+ * with a fixed amount of memory. The id of the codec is recorded in every
+ * carrier header so the decoder can undo it.
+ */
+public interface PayloadCodec {
+
+    // Embeds the payload as it is
+    PayloadCodec NONE = new IdentityCodec();
+
+    /**
+     * Gets the id recorded in the header for this codec.
+     *
+     * @return the codec id
+     */
+    int getId();
+
+    /**
+     * Wraps a stream so bytes written to it are encoded on their way to it.
+     * Closing the returned stream finishes the encoding and closes the wrapped
+     * stream.
+     *
+     * @param out the stream to write encoded bytes to
+     * @return the stream to write the payload to
+     */
+    OutputStream encoding(OutputStream out);
+
+    /**
+     * Wraps a stream so bytes written to it are decoded on their way to it.
+     * Closing the returned stream finishes the decoding and closes the wrapped
+     * stream.
+     *
+     * @param out the stream to write decoded bytes to
+     * @return the stream to write the embedded bytes to
+     */
+    OutputStream decoding(OutputStream out);
+
+    /**
+     * Looks up the codec to decode with by its header id.
+     *
+     * @param id the codec id
+     * @return the codec, or null if no codec has that id
+     */
+    static PayloadCodec fromId(int id) {
+        switch (id) {
+            case IdentityCodec.ID:
+                return NONE;
+            case DeflateCodec.ID:
+                // The level only matters when encoding
+                return new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+            default:
+                return null;
+        }
+    }
+}
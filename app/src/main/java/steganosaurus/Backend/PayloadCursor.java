@@ -0,0 +1,168 @@
+package steganosaurus.Backend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Indexed read cursor over a carrier header followed by a slice of the payload.
+ * Every read is a single absolute index into the header array or the slice
+ * buffer, so walking the whole payload is linear in its size no matter how
+ * large it is.
+ *
+ * Each read returns the bits for one pixel: a whole byte while in the header,
+ * and {@link Density#getBitsPerPixel()} bits of the payload after it.
+ */
+public final class PayloadCursor {
+
+    private final byte[] header;
+    private final ByteBuffer payload;
+    private final int payloadEnd;
+    private final Density density;
+    private int headerPosition = 0;
+    private int payloadPosition = 0;
+    // Payload bits read but not yet returned, for densities that split bytes
+    private long bits = 0;
+    private int bitCount = 0;
+    // Scratch space for packing whole words, allocated on first use
+    private byte[] stage;
+
+    /**
+     * Constructs a cursor over a whole payload array, preceded by a header.
+     *
+     * @param header  the header bytes, read first
+     * @param payload the payload bytes, read after the header
+     */
+    public PayloadCursor(byte[] header, byte[] payload) {
+        this(header, ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Constructs a cursor over a payload slice at the default density, preceded
+     * by a header.
+     *
+     * @param header  the header bytes, read first
+     * @param payload the payload slice, as returned by
+     *                {@link PayloadSource#slice(long, int)}
+     */
+    public PayloadCursor(byte[] header, ByteBuffer payload) {
+        this(header, payload, Density.DEFAULT);
+    }
+
+    /**
+     * Constructs a cursor over a payload slice, preceded by a header. The slice
+     * is read from its position to its limit, without moving either.
+     *
+     * @param header  the header bytes, read first
+     * @param payload the payload slice, as returned by
+     *                {@link PayloadSource#slice(long, int)}
+     * @param density the density the payload is packed at
+     */
+    public PayloadCursor(byte[] header, ByteBuffer payload, Density density) {
+        this.header = header;
+        this.payload = payload.slice();
+        this.payloadEnd = this.payload.remaining();
+        this.density = density;
+    }
+
+    /**
+     * Constructs a cursor over a slice of a payload source, preceded by a header.
+     *
+     * @param header  the header bytes, read first
+     * @param payload the payload source
+     * @param slice   the slice of the payload to read
+     * @throws IOException if the slice cannot be read
+     */
+    public PayloadCursor(byte[] header, PayloadSource payload, CarrierSlice slice) throws IOException {
+        this(header, payload.slice(slice.getOffset(), slice.getLength()), slice.getDensity());
+    }
+
+    /**
+     * Returns whether there are bytes left to read.
+     *
+     * @return true if at least one header or payload byte remains
+     */
+    public boolean hasRemaining() {
+        return headerPosition < header.length || payloadPosition < payloadEnd || bitCount > 0;
+    }
+
+    /**
+     * Returns whether the next read is still in the header.
+     *
+     * @return true if at least one header byte remains
+     */
+    public boolean inHeader() {
+        return headerPosition < header.length;
+    }
+
+    /**
+     * Returns whether the next pixel starts on a payload byte boundary, so
+     * whole words can be packed from here.
+     *
+     * @return true if no bits of a split byte are pending
+     */
+    public boolean isAligned() {
+        return headerPosition >= header.length && bitCount == 0;
+    }
+
+    /**
+     * Packs as many whole payload words as fit into the pixels, straight from the
+     * payload buffer. Only valid while {@link #isAligned()}.
+     *
+     * @param pixels the ARGB pixels of the carrier
+     * @param from   the index of the first pixel to write
+     * @param to     the index after the last pixel that may be written
+     * @return the number of pixels written
+     */
+    int packWords(int[] pixels, int from, int to) {
+        if (stage == null)
+            stage = new byte[Embedder.STAGE_SIZE];
+        int packed = Embedder.packWords(payload, payloadPosition, payloadEnd - payloadPosition, stage, pixels, from,
+                to - from, density);
+        payloadPosition += packed;
+        return (int) (packed * 8L / density.getBitsPerPixel());
+    }
+
+    /**
+     * Gets the density the payload is packed at.
+     *
+     * @return the payload density
+     */
+    public Density getDensity() {
+        return density;
+    }
+
+    /**
+     * Returns the number of pixels needed for what is left to read, header
+     * included.
+     *
+     * @return the remaining pixel count
+     */
+    public long remaining() {
+        long payloadBits = (long) (payloadEnd - payloadPosition) * 8 + bitCount;
+        return (header.length - headerPosition) + (payloadBits + density.getBitsPerPixel() - 1)
+                / density.getBitsPerPixel();
+    }
+
+    /**
+     * Reads the bits for the next pixel. Callers must check
+     * {@link #hasRemaining()} first. Past the end of the payload the last pixel
+     * is padded with zeros.
+     *
+     * @return the next header byte, or the next payload bits, as an unsigned value
+     */
+    public int next() {
+        if (headerPosition < header.length)
+            return header[headerPosition++] & 0xFF;
+        if (density == Density.DEFAULT)
+            return payload.get(payloadPosition++) & 0xFF;
+        int bitsPerPixel = density.getBitsPerPixel();
+        while (bitCount < bitsPerPixel && payloadPosition < payloadEnd) {
+            bits |= (long) (payload.get(payloadPosition++) & 0xFF) << bitCount;
+            bitCount += 8;
+        }
+        int value = (int) (bits & ((1L << bitsPerPixel) - 1));
+        bits >>>= bitsPerPixel;
+        bitCount = Math.max(0, bitCount - bitsPerPixel);
+        return value;
+    }
+}
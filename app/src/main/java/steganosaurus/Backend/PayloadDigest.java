@@ -0,0 +1,82 @@
+package steganosaurus.Backend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Streaming SHA-256 of a payload file. The file is read through a direct buffer
+ * in fixed-size blocks, so hashing never holds more than one block in memory.
+ * The blocks can also be copied to a stream as they are hashed, so a codec can
+ * run in the same pass.
+ * The digest and buffer are reused between calls, so an instance must not be
+ * shared between threads.
+ */
+public class PayloadDigest {
+
+    // Size of the blocks read from disk
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final MessageDigest digest;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+    // Heap copy of a block for streams, allocated on first use
+    private byte[] block;
+
+    /**
+     * Constructs a PayloadDigest.
+     */
+    public PayloadDigest() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    }
+
+    /**
+     * Hashes the whole content of a file.
+     *
+     * @param file the file to hash
+     * @return the SHA-256 hash of the file
+     * @throws IOException if the file cannot be read
+     */
+    public byte[] hash(Path file) throws IOException {
+        return hash(file, null);
+    }
+
+    /**
+     * Hashes the whole content of a file, writing it to a stream on the way.
+     *
+     * @param file the file to hash
+     * @param copy the stream to write the content to, or null
+     * @return the SHA-256 hash of the file
+     * @throws IOException if the file cannot be read or the stream cannot be
+     *                     written
+     */
+    public byte[] hash(Path file, OutputStream copy) throws IOException {
+        digest.reset();
+        if (copy != null && block == null)
+            block = new byte[BLOCK_SIZE];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                if (copy != null) {
+                    int length = buffer.remaining();
+                    buffer.get(block, 0, length);
+                    digest.update(block, 0, length);
+                    copy.write(block, 0, length);
+                } else {
+                    digest.update(buffer);
+                }
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,31 @@
+package steganosaurus.Backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access source of payload bytes. Carriers ask for their slice only when
+ * they are encoded, so implementations can page data in on demand instead of
+ * holding the whole payload in memory.
+ */
+public interface PayloadSource extends Closeable {
+
+    /**
+     * Gets the total length of the payload.
+     *
+     * @return the length in bytes
+     */
+    long length();
+
+    /**
+     * Returns a read-only view of a range of the payload. The view starts at
+     * position 0 and has exactly the requested number of bytes remaining.
+     *
+     * @param offset the position of the first byte
+     * @param length the number of bytes
+     * @return a buffer over the range
+     * @throws IOException if the range cannot be read
+     */
+    ByteBuffer slice(long offset, int length) throws IOException;
+}
@@ -0,0 +1,61 @@
+package steganosaurus.Backend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes carriers as RGBA PNGs through {@link PngRowWriter}. The default
+ * format: the smallest files, at the cost of filtering and deflating every
+ * row.
+ */
+public final class PngFormat implements StreamableFormat {
+
+    private final PngOptions options;
+
+    /**
+     * Constructs a PngFormat with the default options, for the service loader.
+     */
+    public PngFormat() {
+        this(PngOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs a PngFormat.
+     *
+     * @param options the compression level and row filter
+     */
+    public PngFormat(PngOptions options) {
+        if (options == null)
+            throw new IllegalArgumentException("PNG options must not be null.");
+        this.options = options;
+    }
+
+    /**
+     * Gets the compression level and row filter.
+     *
+     * @return the options
+     */
+    public PngOptions getOptions() {
+        return options;
+    }
+
+    @Override
+    public String getName() {
+        return "png";
+    }
+
+    @Override
+    public String getExtension() {
+        return "png";
+    }
+
+    @Override
+    public String describe() {
+        return getName() + " " + options;
+    }
+
+    @Override
+    public CarrierWriter open(OutputStream output, int width, int height) throws IOException {
+        return new PngRowWriter(output, width, height, options);
+    }
+}
@@ -0,0 +1,458 @@
+package steganosaurus.Backend;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads a PNG one scanline at a time, converting every row to ARGB. Only the
+ * current and previous rows are held in memory and image data is only inflated
+ * as far as the rows actually read, so callers that need the first few rows
+ * never pay for the rest of the image.
+ *
+ * All standard colour types and bit depths are supported. Interlaced images
+ * cannot be read row by row, so callers should check {@link #isStreamable()}
+ * and fall back to {@code ImageIO} for those.
+ */
+public class PngRowReader implements Closeable {
+
+    // The eight byte signature every PNG starts with
+    static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+    // Chunk types
+    static final int IHDR = 0x49484452;
+    static final int PLTE = 0x504C5445;
+    static final int TRNS = 0x74524E53;
+    static final int IDAT = 0x49444154;
+    static final int IEND = 0x49454E44;
+    // Colour types
+    private static final int GRAY = 0;
+    private static final int RGB = 2;
+    private static final int PALETTE = 3;
+    private static final int GRAY_ALPHA = 4;
+    private static final int RGBA = 6;
+    // Sizes of the chunks read into memory: IHDR exactly, PLTE and tRNS at most
+    private static final int IHDR_LENGTH = 13;
+    private static final int MAX_PLTE_LENGTH = 256 * 3;
+    private static final int MAX_TRNS_LENGTH = 256;
+
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+    private final InputStream imageData;
+    private int width;
+    private int height;
+    private int bitDepth;
+    private int colorType;
+    private int interlace;
+    private int[] palette;
+    // Transparent colour key from tRNS, -1 if there is none
+    private int transparentGray = -1;
+    private long transparentRgb = -1;
+    private byte[] row;
+    private byte[] previous;
+    private int bytesPerPixel;
+    private int rowsRead = 0;
+
+    /**
+     * Constructs a PngRowReader over a stream, reading every chunk up to the first
+     * image data chunk.
+     *
+     * @param input the PNG stream, closed along with this reader
+     * @throws IOException if the stream is not a valid PNG
+     */
+    public PngRowReader(InputStream input) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(input, 1 << 16));
+        byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE))
+            throw new IOException("Not a PNG file.");
+        int firstDataLength = readHeaderChunks();
+        imageData = new InflaterInputStream(new ImageDataStream(firstDataLength), inflater, 1 << 16);
+        int samples = colorType == RGB ? 3 : colorType == GRAY_ALPHA ? 2 : colorType == RGBA ? 4 : 1;
+        int bitsPerPixel = samples * bitDepth;
+        bytesPerPixel = Math.max(1, bitsPerPixel / 8);
+        long stride = ((long) width * bitsPerPixel + 7) / 8;
+        if (stride > Integer.MAX_VALUE - 8)
+            throw new IOException("PNG rows are too wide: " + width);
+        row = new byte[(int) stride];
+        previous = new byte[(int) stride];
+    }
+
+    /**
+     * Returns whether a file starts with the PNG signature.
+     *
+     * @param file the file to check
+     * @return true if the file looks like a PNG
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isPng(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] signature = input.readNBytes(SIGNATURE.length);
+            return Arrays.equals(signature, SIGNATURE);
+        }
+    }
+
+    /**
+     * Returns whether the image can be read row by row, which is the case for
+     * every non-interlaced PNG.
+     *
+     * @return true if {@link #readRow} can be used
+     */
+    public boolean isStreamable() {
+        return interlace == 0;
+    }
+
+    /**
+     * Gets the width of the image.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the image.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Reads the next row of the image.
+     *
+     * @param argb the array to fill with the ARGB pixels of the row, at least
+     *             {@link #getWidth()} long
+     * @return false if every row has already been read, true otherwise
+     * @throws IOException if the image data is corrupted or the image is
+     *                     interlaced
+     */
+    public boolean readRow(int[] argb) throws IOException {
+        if (!isStreamable())
+            throw new IOException("Interlaced PNGs cannot be read row by row.");
+        if (rowsRead >= height)
+            return false;
+        int filter = imageData.read();
+        if (filter < 0)
+            throw new EOFException("PNG image data ends after " + rowsRead + " of " + height + " rows.");
+        readFully(row);
+        unfilter(filter);
+        toArgb(argb);
+        byte[] swap = previous;
+        previous = row;
+        row = swap;
+        rowsRead++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    // #region Helper functions
+
+    // Reads chunks up to the first IDAT and returns its length
+    private int readHeaderChunks() throws IOException {
+        boolean seenHeader = false;
+        while (true) {
+            int length = readLength();
+            int type = in.readInt();
+            if (type == IDAT) {
+                if (!seenHeader)
+                    throw new IOException("PNG image data before header.");
+                return length;
+            }
+            // Only the chunks read below are held in memory, the rest are skipped
+            int limit = maxLength(type);
+            if (limit < 0) {
+                in.skipNBytes(length + 4L); // data and CRC
+                if (type == IEND)
+                    throw new IOException("PNG has no image data.");
+                continue;
+            }
+            if (length > limit || (type == IHDR && length != IHDR_LENGTH))
+                throw new IOException("PNG chunk has an invalid length: " + length);
+            byte[] data = new byte[length];
+            in.readFully(data);
+            in.readInt(); // CRC
+            switch (type) {
+                case IHDR:
+                    width = readInt(data, 0);
+                    height = readInt(data, 4);
+                    bitDepth = data[8] & 0xFF;
+                    colorType = data[9] & 0xFF;
+                    interlace = data[12] & 0xFF;
+                    if (width <= 0 || height <= 0)
+                        throw new IOException("Invalid PNG dimensions: " + width + "x" + height);
+                    if (!isValidDepth(colorType, bitDepth))
+                        throw new IOException("Invalid PNG colour type " + colorType + " at bit depth " + bitDepth);
+                    seenHeader = true;
+                    break;
+                case PLTE:
+                    palette = new int[256];
+                    Arrays.fill(palette, 0xFF000000);
+                    for (int i = 0; i < length / 3; i++)
+                        palette[i] = 0xFF000000 | ((data[i * 3] & 0xFF) << 16) | ((data[i * 3 + 1] & 0xFF) << 8)
+                                | (data[i * 3 + 2] & 0xFF);
+                    break;
+                case TRNS:
+                    if (colorType == PALETTE && palette != null) {
+                        for (int i = 0; i < length && i < 256; i++)
+                            palette[i] = (palette[i] & 0x00FFFFFF) | ((data[i] & 0xFF) << 24);
+                    } else if (colorType == GRAY && length >= 2) {
+                        transparentGray = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+                    } else if (colorType == RGB && length >= 6) {
+                        transparentRgb = 0;
+                        for (int i = 0; i < 6; i++)
+                            transparentRgb = (transparentRgb << 8) | (data[i] & 0xFF);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // Reads a chunk length, which the format caps at 2^31 - 1
+    private int readLength() throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            throw new IOException("PNG chunk has an invalid length: " + (length & 0xFFFFFFFFL));
+        return length;
+    }
+
+    // Gets the largest length of a chunk read into memory, or -1 for chunks
+    // that are skipped
+    private static int maxLength(int type) {
+        switch (type) {
+            case IHDR:
+                return IHDR_LENGTH;
+            case PLTE:
+                return MAX_PLTE_LENGTH;
+            case TRNS:
+                return MAX_TRNS_LENGTH;
+            default:
+                return -1;
+        }
+    }
+
+    private static boolean isValidDepth(int colorType, int bitDepth) {
+        switch (colorType) {
+            case GRAY:
+                return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8 || bitDepth == 16;
+            case PALETTE:
+                return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8;
+            case RGB:
+            case GRAY_ALPHA:
+            case RGBA:
+                return bitDepth == 8 || bitDepth == 16;
+            default:
+                return false;
+        }
+    }
+
+    private void readFully(byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int count = imageData.read(buffer, read, buffer.length - read);
+            if (count < 0)
+                throw new EOFException("PNG image data ends after " + rowsRead + " of " + height + " rows.");
+            read += count;
+        }
+    }
+
+    // Reverses the filter of the current row in place, using the previous row
+    private void unfilter(int filter) throws IOException {
+        int bpp = bytesPerPixel;
+        switch (filter) {
+            case 0:
+                break;
+            case 1:
+                for (int i = bpp; i < row.length; i++)
+                    row[i] += row[i - bpp];
+                break;
+            case 2:
+                for (int i = 0; i < row.length; i++)
+                    row[i] += previous[i];
+                break;
+            case 3:
+                for (int i = 0; i < row.length; i++) {
+                    int left = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    row[i] = (byte) (row[i] + ((left + (previous[i] & 0xFF)) >>> 1));
+                }
+                break;
+            case 4:
+                for (int i = 0; i < row.length; i++) {
+                    int left = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    int upLeft = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                    row[i] = (byte) (row[i] + paeth(left, previous[i] & 0xFF, upLeft));
+                }
+                break;
+            default:
+                throw new IOException("Unknown PNG filter type: " + filter);
+        }
+    }
+
+    static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpLeft = Math.abs(estimate - upLeft);
+        if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft)
+            return left;
+        if (distanceUp <= distanceUpLeft)
+            return up;
+        return upLeft;
+    }
+
+    // Converts the unfiltered row to ARGB
+    private void toArgb(int[] argb) throws IOException {
+        int step = bitDepth == 16 ? 2 : 1;
+        switch (colorType) {
+            case GRAY:
+                for (int x = 0; x < width; x++) {
+                    int sample = bitDepth == 16 ? ((row[x * 2] & 0xFF) << 8) | (row[x * 2 + 1] & 0xFF) : packed(x);
+                    int gray = gray(sample);
+                    int alpha = sample == transparentGray ? 0 : 0xFF;
+                    argb[x] = (alpha << 24) | (gray << 16) | (gray << 8) | gray;
+                }
+                break;
+            case RGB:
+                for (int x = 0, i = 0; x < width; x++, i += 3 * step) {
+                    int alpha = 0xFF;
+                    if (transparentRgb >= 0) {
+                        long key = 0;
+                        for (int c = 0; c < 3; c++)
+                            key = (key << 16) | (bitDepth == 16
+                                    ? ((row[i + c * 2] & 0xFF) << 8) | (row[i + c * 2 + 1] & 0xFF)
+                                    : row[i + c] & 0xFF);
+                        if (key == transparentRgb)
+                            alpha = 0;
+                    }
+                    argb[x] = (alpha << 24) | (channel(i) << 16) | (channel(i + step) << 8) | channel(i + 2 * step);
+                }
+                break;
+            case PALETTE:
+                if (palette == null)
+                    throw new IOException("Palette PNG has no palette.");
+                for (int x = 0; x < width; x++)
+                    argb[x] = palette[packed(x)];
+                break;
+            case GRAY_ALPHA:
+                for (int x = 0, i = 0; x < width; x++, i += 2 * step) {
+                    int gray = gray(bitDepth == 16 ? ((row[i] & 0xFF) << 8) | (row[i + 1] & 0xFF) : row[i] & 0xFF);
+                    argb[x] = (channel(i + step) << 24) | (gray << 16) | (gray << 8) | gray;
+                }
+                break;
+            case RGBA:
+                for (int x = 0, i = 0; x < width; x++, i += 4 * step)
+                    argb[x] = (channel(i + 3 * step) << 24) | (channel(i) << 16) | (channel(i + step) << 8)
+                            | channel(i + 2 * step);
+                break;
+            default:
+                throw new IOException("Unknown PNG colour type: " + colorType);
+        }
+    }
+
+    // Reads the colour or alpha sample starting at byte i as an 8-bit value,
+    // rounding 16-bit samples the same way ImageIO does
+    private int channel(int i) {
+        if (bitDepth != 16)
+            return row[i] & 0xFF;
+        int sample = ((row[i] & 0xFF) << 8) | (row[i + 1] & 0xFF);
+        return (sample * 255 + 32767) / 65535;
+    }
+
+    // Maps a gray sample to 8-bit sRGB the same way ImageIO does for grayscale
+    // images, so both decoding paths agree on every pixel
+    private int gray(int sample) {
+        if (bitDepth < 8)
+            return sample * 255 / ((1 << bitDepth) - 1);
+        if (bitDepth == 8)
+            return Gray.EIGHT_BIT[sample];
+        return Gray.SIXTEEN_BIT[sample];
+    }
+
+    // Reads sample x of a row packed at 1, 2, 4 or 8 bits per sample
+    private int packed(int x) {
+        if (bitDepth == 8)
+            return row[x] & 0xFF;
+        int perByte = 8 / bitDepth;
+        int shift = 8 - bitDepth * (x % perByte + 1);
+        return ((row[x / perByte] & 0xFF) >>> shift) & ((1 << bitDepth) - 1);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8)
+                | (data[offset + 3] & 0xFF);
+    }
+
+    // Gray to sRGB tables, built on first use from the JDK grayscale colour model
+    private static final class Gray {
+        private static final int[] EIGHT_BIT = table(BufferedImage.TYPE_BYTE_GRAY, 8);
+        private static final int[] SIXTEEN_BIT = table(BufferedImage.TYPE_USHORT_GRAY, 16);
+
+        private static int[] table(int type, int bits) {
+            int size = 1 << bits;
+            BufferedImage ramp = new BufferedImage(size, 1, type);
+            WritableRaster raster = ramp.getRaster();
+            for (int i = 0; i < size; i++)
+                raster.setSample(i, 0, 0, i);
+            int[] table = ramp.getRGB(0, 0, size, 1, null, 0, size);
+            for (int i = 0; i < size; i++)
+                table[i] &= 0xFF;
+            return table;
+        }
+    }
+
+    // Presents the data of consecutive IDAT chunks as a single stream
+    private class ImageDataStream extends InputStream {
+        private int remaining;
+        private boolean finished = false;
+
+        private ImageDataStream(int firstLength) {
+            remaining = firstLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            while (remaining == 0) {
+                if (finished)
+                    return -1;
+                in.readInt(); // CRC of the previous chunk
+                int nextLength = readLength();
+                if (in.readInt() != IDAT) {
+                    finished = true;
+                    return -1;
+                }
+                remaining = nextLength;
+            }
+            int count = in.read(buffer, offset, Math.min(length, remaining));
+            if (count < 0)
+                throw new EOFException("PNG ends inside an image data chunk.");
+            remaining -= count;
+            return count;
+        }
+    }
+
+    // #endregion
+}
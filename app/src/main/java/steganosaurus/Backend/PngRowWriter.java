@@ -0,0 +1,279 @@
+package steganosaurus.Backend;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an 8-bit RGBA PNG one scanline at a time. Rows are filtered and
+ * deflated as they arrive, so only the current and previous rows are held in
+ * memory no matter how large the image is.
+ *
+ * By default each row uses whichever of the five PNG filters gives the
+ * smallest sum of absolute differences, the same heuristic the JDK PNG writer
+ * uses. {@link PngOptions} can fix the filter and change the deflate level.
+ */
+public class PngRowWriter implements CarrierWriter {
+
+    // Size of the IDAT chunks written
+    private static final int CHUNK_SIZE = 1 << 16;
+    // Bytes per RGBA pixel
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final DataOutputStream out;
+    private final Deflater deflater;
+    // Filter type used for every row, or -1 to pick per row
+    private final int filterType;
+    private final DeflaterOutputStream imageData;
+    private final int width;
+    private final int height;
+    private byte[] current;
+    private byte[] previous;
+    // Scratch rows for each filter type, including the leading filter byte
+    private final byte[][] filtered = new byte[5][];
+    private int rowsWritten = 0;
+    // Time spent filtering and deflating rows
+    private long encodeNanos = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructs a PngRowWriter with the default options and writes the PNG
+     * signature and header.
+     *
+     * @param output the stream to write to, closed along with this writer
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @throws IOException if the stream cannot be written
+     */
+    public PngRowWriter(OutputStream output, int width, int height) throws IOException {
+        this(output, width, height, PngOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs a PngRowWriter and writes the PNG signature and header.
+     *
+     * @param output  the stream to write to, closed along with this writer
+     * @param width   the width of the image
+     * @param height  the height of the image
+     * @param options the compression level and row filter
+     * @throws IOException if the stream cannot be written
+     */
+    public PngRowWriter(OutputStream output, int width, int height, PngOptions options) throws IOException {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Invalid PNG dimensions: " + width + "x" + height);
+        if ((long) width * BYTES_PER_PIXEL > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("PNG rows are too wide: " + width);
+        this.width = width;
+        this.height = height;
+        filterType = options.getFilter().getType();
+        deflater = new Deflater(options.getLevel().getDeflateLevel());
+        out = new DataOutputStream(new BufferedOutputStream(output, CHUNK_SIZE));
+        out.write(PngRowReader.SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = 6; // colour type, RGBA
+        writeChunk(PngRowReader.IHDR, header, header.length);
+        imageData = new DeflaterOutputStream(new ImageDataStream(), deflater, CHUNK_SIZE);
+        current = new byte[width * BYTES_PER_PIXEL];
+        previous = new byte[width * BYTES_PER_PIXEL];
+        for (int i = 0; i < filtered.length; i++)
+            filtered[i] = new byte[current.length + 1];
+    }
+
+    /**
+     * Writes the next row of the image.
+     *
+     * @param argb the ARGB pixels of the row, at least {@link #width} long
+     * @throws IOException if the stream cannot be written or every row has
+     *                     already been written
+     */
+    public void writeRow(int[] argb) throws IOException {
+        writeRow(argb, 0);
+    }
+
+    @Override
+    public void writeRow(int[] argb, int offset) throws IOException {
+        if (rowsWritten >= height)
+            throw new IOException("All " + height + " PNG rows have already been written.");
+        long started = System.nanoTime();
+        for (int x = 0, i = 0; x < width; x++, i += BYTES_PER_PIXEL) {
+            int pixel = argb[offset + x];
+            current[i] = (byte) (pixel >> 16);
+            current[i + 1] = (byte) (pixel >> 8);
+            current[i + 2] = (byte) pixel;
+            current[i + 3] = (byte) (pixel >> 24);
+        }
+        byte[] best = filter();
+        imageData.write(best, 0, best.length);
+        byte[] swap = previous;
+        previous = current;
+        current = swap;
+        rowsWritten++;
+        encodeNanos += System.nanoTime() - started;
+    }
+
+    @Override
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    /**
+     * Finishes the image data and writes the end chunk. Fails if fewer rows were
+     * written than the image height.
+     *
+     * @throws IOException if the stream cannot be written or the image is
+     *                     incomplete
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (rowsWritten < height)
+                throw new IOException("Only " + rowsWritten + " of " + height + " PNG rows were written.");
+            long started = System.nanoTime();
+            imageData.close();
+            writeChunk(PngRowReader.IEND, new byte[0], 0);
+            encodeNanos += System.nanoTime() - started;
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    // #region Helper functions
+
+    // Applies every filter to the current row and returns the cheapest one, or
+    // only the fixed filter if there is one
+    private byte[] filter() {
+        if (filterType >= 0)
+            return filter(filterType);
+        int bpp = BYTES_PER_PIXEL;
+        int length = current.length;
+        for (int type = 0; type < filtered.length; type++)
+            filtered[type][0] = (byte) type;
+        for (int i = 0; i < length; i++) {
+            int value = current[i] & 0xFF;
+            int left = i >= bpp ? current[i - bpp] & 0xFF : 0;
+            int up = previous[i] & 0xFF;
+            int upLeft = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+            filtered[0][i + 1] = (byte) value;
+            filtered[1][i + 1] = (byte) (value - left);
+            filtered[2][i + 1] = (byte) (value - up);
+            filtered[3][i + 1] = (byte) (value - ((left + up) >>> 1));
+            filtered[4][i + 1] = (byte) (value - PngRowReader.paeth(left, up, upLeft));
+        }
+        byte[] best = filtered[0];
+        long bestCost = Long.MAX_VALUE;
+        for (byte[] candidate : filtered) {
+            long cost = 0;
+            for (int i = 1; i < candidate.length; i++)
+                cost += Math.abs(candidate[i]);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    // Applies a single filter to the current row
+    private byte[] filter(int type) {
+        int bpp = BYTES_PER_PIXEL;
+        int length = current.length;
+        byte[] row = filtered[type];
+        row[0] = (byte) type;
+        switch (type) {
+            case 0:
+                System.arraycopy(current, 0, row, 1, length);
+                break;
+            case 1:
+                System.arraycopy(current, 0, row, 1, Math.min(bpp, length));
+                for (int i = bpp; i < length; i++)
+                    row[i + 1] = (byte) (current[i] - current[i - bpp]);
+                break;
+            case 2:
+                for (int i = 0; i < length; i++)
+                    row[i + 1] = (byte) (current[i] - previous[i]);
+                break;
+            case 3:
+                for (int i = 0; i < length; i++) {
+                    int left = i >= bpp ? current[i - bpp] & 0xFF : 0;
+                    row[i + 1] = (byte) (current[i] - ((left + (previous[i] & 0xFF)) >>> 1));
+                }
+                break;
+            default:
+                for (int i = 0; i < length; i++) {
+                    int left = i >= bpp ? current[i - bpp] & 0xFF : 0;
+                    int upLeft = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                    row[i + 1] = (byte) (current[i] - PngRowReader.paeth(left, previous[i] & 0xFF, upLeft));
+                }
+        }
+        return row;
+    }
+
+    private void writeChunk(int type, byte[] data, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] typeBytes = new byte[4];
+        writeInt(typeBytes, 0, type);
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >> 24);
+        data[offset + 1] = (byte) (value >> 16);
+        data[offset + 2] = (byte) (value >> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    // Splits the deflated image data into IDAT chunks
+    private class ImageDataStream extends OutputStream {
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer[count++] = (byte) b;
+            if (count == buffer.length)
+                flushChunk();
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                int copied = Math.min(length, buffer.length - count);
+                System.arraycopy(data, offset, buffer, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+                if (count == buffer.length)
+                    flushChunk();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (count > 0)
+                flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            writeChunk(PngRowReader.IDAT, buffer, count);
+            count = 0;
+        }
+    }
+
+    // #endregion
+}
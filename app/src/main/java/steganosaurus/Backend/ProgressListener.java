@@ -0,0 +1,16 @@
+package steganosaurus.Backend;
+
+/**
+ * Receives progress updates from a running job. Updates arrive on worker
+ * threads, so listeners that touch the GUI must hand them over to the event
+ * dispatch thread.
+ */
+public interface ProgressListener {
+
+    /**
+     * Called each time a carrier finishes.
+     *
+     * @param progress the progress so far
+     */
+    void progress(JobProgress progress);
+}
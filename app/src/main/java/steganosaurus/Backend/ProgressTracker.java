@@ -0,0 +1,56 @@
+package steganosaurus.Backend;
+
+import java.io.File;
+
+/**
+ * Thread-safe progress counter for a single job. Workers report each finished
+ * carrier and the tracker forwards a snapshot to its listener.
+ */
+public class ProgressTracker {
+
+    private final ProgressListener listener;
+    private final long bytesTotal;
+    private final int carriersTotal;
+    private final long start = System.nanoTime();
+    private long bytesDone = 0;
+    private int carriersDone = 0;
+
+    /**
+     * Constructs a ProgressTracker.
+     *
+     * @param listener      the listener to notify, or null for none
+     * @param bytesTotal    the payload bytes in the whole job
+     * @param carriersTotal the carriers in the whole job
+     */
+    public ProgressTracker(ProgressListener listener, long bytesTotal, int carriersTotal) {
+        this.listener = listener;
+        this.bytesTotal = bytesTotal;
+        this.carriersTotal = carriersTotal;
+    }
+
+    /**
+     * Records a finished carrier.
+     *
+     * @param bytes the payload bytes the carrier held
+     */
+    public void carrierDone(long bytes) {
+        carrierDone(bytes, null, 0, 0);
+    }
+
+    /**
+     * Records a finished carrier along with how long it took.
+     *
+     * @param bytes        the payload bytes the carrier held
+     * @param carrier      the file written for the carrier, or null
+     * @param carrierNanos the time spent on the whole carrier
+     * @param encodeNanos  the part of that time spent encoding the image
+     */
+    public synchronized void carrierDone(long bytes, File carrier, long carrierNanos, long encodeNanos) {
+        bytesDone += bytes;
+        carriersDone++;
+        // Notify under the lock so listeners see snapshots in order
+        if (listener != null)
+            listener.progress(new JobProgress(bytesDone, bytesTotal, carriersDone, carriersTotal,
+                    System.nanoTime() - start, carrier, carrierNanos, encodeNanos));
+    }
+}
@@ -0,0 +1,73 @@
+package steganosaurus.Backend;
+
+/**
+ * Reads payload bytes back out of carrier pixels at a given density. Pixels do
+ * not always hold a whole number of bytes, so leftover bits are kept between
+ * calls and a slice can be read one row at a time.
+ */
+public final class SliceExtractor {
+
+    private final Density density;
+    private long bits = 0;
+    private int bitCount = 0;
+
+    /**
+     * Constructs a SliceExtractor.
+     *
+     * @param density the density the slice was embedded at
+     */
+    public SliceExtractor(Density density) {
+        this.density = density;
+    }
+
+    /**
+     * Extracts bytes from a run of pixels, carrying any bits that do not make up
+     * a whole byte over to the next call.
+     *
+     * @param pixels the ARGB pixels of the carrier
+     * @param from   the index of the first pixel to read
+     * @param to     the index after the last pixel that may be read
+     * @param dst    the array to fill
+     * @param offset the index in dst of the first byte to write
+     * @param length the most bytes to extract
+     * @return the number of bytes extracted
+     */
+    public int extract(int[] pixels, int from, int to, byte[] dst, int offset, int length) {
+        int written = 0;
+        int pixel = from;
+        int bitsPerPixel = density.getBitsPerPixel();
+        // Step to a byte boundary, then take whole words
+        while (bitCount != 0 && written < length) {
+            if (bitCount < 8) {
+                if (pixel >= to)
+                    return written;
+                bits |= (long) Embedder.extractBits(pixels[pixel++], density) << bitCount;
+                bitCount += bitsPerPixel;
+                continue;
+            }
+            dst[offset + written++] = (byte) bits;
+            bits >>>= 8;
+            bitCount -= 8;
+        }
+        if (bitCount == 0) {
+            int unpacked = Embedder.unpackWords(pixels, pixel, to - pixel, dst, offset + written, length - written,
+                    density);
+            written += unpacked;
+            pixel += (int) (unpacked * 8L / bitsPerPixel);
+        }
+        // The tail is shorter than a word
+        while (written < length) {
+            if (bitCount < 8) {
+                if (pixel >= to)
+                    break;
+                bits |= (long) Embedder.extractBits(pixels[pixel++], density) << bitCount;
+                bitCount += bitsPerPixel;
+                continue;
+            }
+            dst[offset + written++] = (byte) bits;
+            bits >>>= 8;
+            bitCount -= 8;
+        }
+        return written;
+    }
+}
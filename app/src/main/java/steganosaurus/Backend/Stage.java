@@ -0,0 +1,31 @@
+package steganosaurus.Backend;
+
+/**
+ * The stages of a job that are timed separately, so a slow job shows whether
+ * hashing, decoding, embedding, encoding or the disk is to blame. See
+ * {@link BackendMetrics}.
+ */
+public enum Stage {
+    // Hashing the payload, when it is stored as it is
+    HASH,
+    // Hashing, compressing and encrypting the payload into the spool
+    SPOOL,
+    // Slicing the payload across the carriers
+    PLAN,
+    // Reading the headers of the carriers to extract from
+    HEADER,
+    // Reading a carrier file into memory
+    READ,
+    // Decoding a carrier image, or copying it from the cache
+    DECODE,
+    // Embedding a slice into the pixels of a carrier
+    EMBED,
+    // Extracting a slice from the pixels of a carrier
+    EXTRACT,
+    // Encoding a carrier in the output format
+    ENCODE,
+    // Writing an encoded carrier to disk
+    WRITE,
+    // Reading, embedding or extracting, and writing a carrier row by row
+    STREAM
+}
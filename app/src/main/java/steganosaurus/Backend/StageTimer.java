@@ -0,0 +1,63 @@
+package steganosaurus.Backend;
+
+import java.io.File;
+
+/**
+ * Times one run of a {@link Stage} into {@link BackendMetrics}, and records it
+ * as a JFR event when a recording is running. Stages that fail are not
+ * recorded.
+ */
+final class StageTimer {
+
+    private final Stage stage;
+    private final File carrier;
+    private final BackendEvents.StageEvent event = new BackendEvents.StageEvent();
+    private final long started;
+
+    private StageTimer(Stage stage, File carrier) {
+        this.stage = stage;
+        this.carrier = carrier;
+        event.begin();
+        started = System.nanoTime();
+    }
+
+    /**
+     * Starts timing a stage that works on the whole payload.
+     *
+     * @param stage the stage
+     * @return the running timer
+     */
+    static StageTimer start(Stage stage) {
+        return new StageTimer(stage, null);
+    }
+
+    /**
+     * Starts timing a stage that works on one carrier.
+     *
+     * @param stage   the stage
+     * @param carrier the carrier
+     * @return the running timer
+     */
+    static StageTimer start(Stage stage, File carrier) {
+        return new StageTimer(stage, carrier);
+    }
+
+    /**
+     * Stops the timer and records the stage.
+     *
+     * @param bytes the bytes the stage processed
+     * @return the time the stage took, in nanoseconds
+     */
+    long stop(long bytes) {
+        long nanos = System.nanoTime() - started;
+        BackendMetrics.get().record(stage, nanos, bytes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage.name();
+            event.carrier = carrier == null ? null : carrier.getPath();
+            event.bytes = bytes;
+            event.commit();
+        }
+        return nanos;
+    }
+}
@@ -0,0 +1,67 @@
+package steganosaurus.Backend;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A carrier format that can be written one row at a time. PNG carriers too
+ * large for the memory budget are only streamed when the output format is one
+ * of these, as the rows are written as they are embedded. Whole images are
+ * written through the same rows.
+ */
+public interface StreamableFormat extends CarrierFormat {
+
+    /**
+     * Starts writing a carrier row by row.
+     *
+     * @param output the stream to write to, closed along with the writer
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the writer, which must be closed once every row is written
+     * @throws IOException if the stream cannot be written
+     */
+    CarrierWriter open(OutputStream output, int width, int height) throws IOException;
+
+    /**
+     * Starts writing a carrier file row by row.
+     *
+     * @param output the file to write to
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the writer, which must be closed once every row is written
+     * @throws IOException if the file cannot be written
+     */
+    default CarrierWriter open(File output, int width, int height) throws IOException {
+        FileOutputStream stream = new FileOutputStream(output);
+        try {
+            return open(stream, width, height);
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    @Override
+    default long write(BufferedImage argb, File output) throws IOException {
+        return writeRows(argb, open(output, argb.getWidth(), argb.getHeight()));
+    }
+
+    @Override
+    default long write(BufferedImage argb, OutputStream output) throws IOException {
+        return writeRows(argb, open(output, argb.getWidth(), argb.getHeight()));
+    }
+
+    // Writes every row of an image and returns the time spent encoding
+    private static long writeRows(BufferedImage argb, CarrierWriter writer) throws IOException {
+        int width = argb.getWidth();
+        int[] pixels = CarrierPixels.pixels(argb);
+        try (writer) {
+            for (int y = 0; y < argb.getHeight(); y++)
+                writer.writeRow(pixels, y * width);
+        }
+        return writer.getEncodeNanos();
+    }
+}
@@ -0,0 +1,109 @@
+package steganosaurus.Backend;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Embeds into and extracts from PNG carriers one scanline at a time, so
+ * carriers far larger than the heap (panoramas, scans) can be used with a
+ * constant-size row window. Scanlines are inflated, fed through the same
+ * {@link PayloadCursor} and {@link Embedder} as decoded carriers, and
+ * written out through a {@link CarrierWriter} in a single pass.
+ */
+public final class StreamingCarrier {
+
+    private StreamingCarrier() {
+    }
+
+    /**
+     * Returns whether a carrier should be streamed rather than decoded whole,
+     * which is the case for non-interlaced PNGs whose decoded size would not fit
+     * in the memory budget.
+     *
+     * @param carrier      the carrier image
+     * @param pixels       the number of pixels in the carrier
+     * @param memoryBudget the memory budget for decoded images
+     * @return true if the carrier should be streamed
+     * @throws IOException if the carrier cannot be read
+     */
+    public static boolean shouldStream(File carrier, long pixels, long memoryBudget) throws IOException {
+        if (pixels * CarrierEncoder.BYTES_PER_PIXEL <= memoryBudget || !PngRowReader.isPng(carrier))
+            return false;
+        try (PngRowReader png = new PngRowReader(new FileInputStream(carrier))) {
+            return png.isStreamable();
+        }
+    }
+
+    /**
+     * Embeds a slice into a PNG carrier row by row and writes the result in a
+     * streamable format.
+     *
+     * @param slice   the slice to embed
+     * @param header  the header of the slice
+     * @param payload the source of the whole payload
+     * @param output  the file to write the carrier to
+     * @param format  the streamable format to write the output in
+     * @return the time spent encoding the output, in nanoseconds
+     * @throws IOException if the carrier cannot be read or written
+     */
+    public static long encode(CarrierSlice slice, byte[] header, PayloadSource payload, File output,
+            StreamableFormat format) throws IOException {
+        PayloadCursor cursor = new PayloadCursor(header, payload, slice);
+        try (PngRowReader in = new PngRowReader(new FileInputStream(slice.getCarrier()))) {
+            CarrierWriter out = format.open(output, in.getWidth(), in.getHeight());
+            try (out) {
+                int[] row = new int[in.getWidth()];
+                while (in.readRow(row)) {
+                    checkInterrupted();
+                    if (cursor.hasRemaining())
+                        Embedder.embed(row, cursor);
+                    out.writeRow(row, 0);
+                }
+            }
+            return out.getEncodeNanos();
+        }
+    }
+
+    /**
+     * Extracts a slice from a PNG carrier row by row, writing it to a stream as
+     * it goes.
+     *
+     * @param carrier the carrier image
+     * @param header  the header read from the carrier
+     * @param out     the stream to write the slice to
+     * @throws IOException if the carrier cannot be read or the stream cannot be
+     *                     written
+     */
+    public static void extract(File carrier, CarrierHeader header, OutputStream out) throws IOException {
+        try (PngRowReader in = new PngRowReader(new FileInputStream(carrier))) {
+            int width = in.getWidth();
+            int[] row = new int[width];
+            SliceExtractor extractor = new SliceExtractor(header.getDensity());
+            // A row holds at most two bytes per pixel, plus bits carried from the last row
+            byte[] bytes = new byte[(int) Math.min(Integer.MAX_VALUE - 8, width * 2L + 1)];
+            long skip = MainBackend.HEADER_SIZE;
+            long remaining = header.getSliceLength();
+            while (remaining > 0 && in.readRow(row)) {
+                checkInterrupted();
+                int from = (int) Math.min(skip, width);
+                skip -= from;
+                int count = extractor.extract(row, from, width, bytes, 0, (int) Math.min(remaining, bytes.length));
+                if (count <= 0)
+                    continue;
+                out.write(bytes, 0, count);
+                remaining -= count;
+            }
+            if (remaining > 0)
+                throw new IOException("Carrier file " + carrier.getName() + " ends before its slice.");
+        }
+    }
+
+    // Lets a cancelled job stop in the middle of a large carrier
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException("Streaming was interrupted.");
+    }
+}
@@ -0,0 +1,85 @@
+package steganosaurus.Backend;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Writes carriers as uncompressed RGBA TIFFs through the JDK ImageIO TIFF
+ * plugin, for consumers that need TIFF. The plugin writes whole images, so
+ * TIFF carriers are never streamed.
+ */
+public final class TiffFormat implements CarrierFormat {
+
+    // Baseline TIFF addresses the file with 32-bit offsets
+    private static final long MAX_BYTES = 0xFFFFFFFFL;
+    // Room left for the header and directory
+    private static final long OVERHEAD = 1 << 16;
+    // Bytes per RGBA pixel
+    private static final int BYTES_PER_PIXEL = 4;
+
+    @Override
+    public String getName() {
+        return "tiff";
+    }
+
+    @Override
+    public String getExtension() {
+        return "tiff";
+    }
+
+    @Override
+    public long write(BufferedImage argb, File output) throws IOException {
+        long started = System.nanoTime();
+        // Replace rather than overwrite, so a shorter file leaves no old bytes behind
+        Files.deleteIfExists(output.toPath());
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            if (stream == null)
+                throw new IOException("Cannot write carrier file: " + output.getName());
+            writeTiff(argb, stream);
+        }
+        return System.nanoTime() - started;
+    }
+
+    @Override
+    public long write(BufferedImage argb, OutputStream output) throws IOException {
+        long started = System.nanoTime();
+        // The writer seeks back to fill in offsets, so it works on a cache in memory
+        try (output; ImageOutputStream stream = new MemoryCacheImageOutputStream(output)) {
+            writeTiff(argb, stream);
+        }
+        return System.nanoTime() - started;
+    }
+
+    @Override
+    public long capacity(long pixels, Density density) {
+        long bytes = (pixels + CarrierHeader.SIZE) * BYTES_PER_PIXEL;
+        return bytes > MAX_BYTES - OVERHEAD ? 0 : density.capacity(pixels);
+    }
+
+    // #region Helper functions
+
+    private static void writeTiff(BufferedImage argb, ImageOutputStream stream) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+        if (!writers.hasNext())
+            throw new IOException("No TIFF writer is installed.");
+        ImageWriter writer = writers.next();
+        try {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(argb, null, null), writer.getDefaultWriteParam());
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // #endregion
+}
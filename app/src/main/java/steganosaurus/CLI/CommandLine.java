@@ -0,0 +1,435 @@
+package steganosaurus.CLI;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import steganosaurus.Backend.BackendListener;
+import steganosaurus.Backend.CarrierFormat;
+import steganosaurus.Backend.CarrierHeader;
+import steganosaurus.Backend.DeflateCodec;
+import steganosaurus.Backend.Density;
+import steganosaurus.Backend.JobProgress;
+import steganosaurus.Backend.MainBackend;
+import steganosaurus.Backend.PayloadCodec;
+import steganosaurus.Backend.PngFormat;
+import steganosaurus.Backend.PngOptions;
+import steganosaurus.Backend.ProgressListener;
+import steganosaurus.Backend.SteganException;
+
+/**
+ * Headless entry point for scripts and servers. Runs a single command against
+ * the same backend the GUI uses, without starting the AWT toolkit.
+ *
+ * Usage:
+ * 
+ * <pre>
+ * embed [options] &lt;file&gt; &lt;carrier|directory&gt;...
+ * extract [options] &lt;carrier|directory&gt;...
+ * probe &lt;carrier|directory&gt;...
+ * capacity &lt;carrier|directory&gt;...
+ * watch [options] &lt;spool&gt;
+ * </pre>
+ * 
+ * Directories are expanded to the files directly inside them, in name order.
+ * The watch command runs jobs from a spool directory through an
+ * {@link IngestService} until the process is stopped.
+ */
+public class CommandLine {
+
+    // Exit codes
+    public static final int OK = 0;
+    public static final int FAILED = 1;
+    public static final int USAGE = 2;
+    // Time a stopped watch gets to cancel its running jobs
+    private static final long STOP_TIMEOUT_SECONDS = 60;
+
+    private static final String USAGE_TEXT = String.join(System.lineSeparator(),
+            "Usage: steganosaurus <command> [options] <arguments>",
+            "",
+            "Commands:",
+            "  embed <file> <carrier|directory>...   hide a file in the carriers",
+            "  extract <carrier|directory>...        recover a hidden file from the carriers",
+            "  probe <carrier|directory>...          list the carriers that hold hidden data",
+            "  capacity <carrier|directory>...       show how many bytes each carrier can hold",
+            "  watch <spool>                         run the job manifests dropped into a directory",
+            "",
+            "Options:",
+            "  --threads <n>     carriers processed at once",
+            "  --memory <MiB>    memory budget for decoded carriers",
+            "  --bits <1|2|4>    most low bits used per channel, default 2",
+            "  --rgb             leave the alpha channel untouched",
+            "  --level <0-9>     compression level, 0 to embed the file as it is",
+            "  --format <png|bmp|tiff>",
+            "                    format of the written carriers, default png",
+            "  --png-level <fast|default|max>",
+            "                    compression of the written carriers",
+            "  --png-filter <none|sub|up|average|paeth|adaptive>",
+            "                    row filter of the written carriers, default adaptive",
+            "  --passphrase-file <file>",
+            "                    encrypt or decrypt with the first line of the file",
+            "  --output <dir>    write carriers or the recovered file to a directory",
+            "  --progress        report each finished carrier on stderr",
+            "  --no-resume       start an embed from zero, ignoring carriers an earlier run wrote",
+            "  --jobs <n>        jobs a watch runs at once, default " + IngestService.DEFAULT_JOBS,
+            "  --queue <n>       jobs a watch queues before it holds back, default "
+                    + IngestService.DEFAULT_QUEUE_CAPACITY);
+
+    private final PrintStream out;
+    private final PrintStream err;
+    // Null to resolve relative paths against the working directory
+    private final File baseDirectory;
+    private final MainBackend backend = new MainBackend(new BackendListener() {
+    });
+    private boolean progress = false;
+    private int bits = Density.DEFAULT.getBitsPerChannel();
+    private boolean alpha = true;
+    private PngOptions pngOptions = PngOptions.DEFAULT;
+    private boolean pngTuned = false;
+    private String formatName = "png";
+    private int jobs = IngestService.DEFAULT_JOBS;
+    private int queueCapacity = IngestService.DEFAULT_QUEUE_CAPACITY;
+    // Options a watch passes on to its jobs
+    private final List<String> jobOptions = new ArrayList<String>();
+
+    /**
+     * Constructs a CommandLine writing to the given streams.
+     *
+     * @param out the stream results are written to
+     * @param err the stream errors and progress are written to
+     */
+    public CommandLine(PrintStream out, PrintStream err) {
+        this(out, err, null);
+    }
+
+    /**
+     * Constructs a CommandLine writing to the given streams and resolving
+     * relative paths against a directory.
+     *
+     * @param out           the stream results are written to
+     * @param err           the stream errors and progress are written to
+     * @param baseDirectory the directory relative paths are resolved against,
+     *                      or null for the working directory
+     */
+    public CommandLine(PrintStream out, PrintStream err, File baseDirectory) {
+        this.out = out;
+        this.err = err;
+        this.baseDirectory = baseDirectory;
+        // Each command runs once, so decoded carriers are never read again
+        backend.setCacheBudget(0);
+    }
+
+    /**
+     * Runs a command from the process arguments and exits with its status.
+     *
+     * @param args the command and its arguments
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(new CommandLine(System.out, System.err).run(args));
+    }
+
+    /**
+     * Runs a command.
+     *
+     * @param args the command and its arguments
+     * @return {@link #OK} on success, {@link #FAILED} if the command failed or
+     *         {@link #USAGE} if the arguments were invalid
+     */
+    public int run(String[] args) {
+        if (args.length == 0 || args[0].equals("--help") || args[0].equals("-h")) {
+            out.println(USAGE_TEXT);
+            return args.length == 0 ? USAGE : OK;
+        }
+        try {
+            List<String> operands = parseOptions(Arrays.asList(args).subList(1, args.length));
+            switch (args[0]) {
+                case "embed":
+                    return embed(operands);
+                case "extract":
+                    return extract(operands);
+                case "probe":
+                    return probe(operands);
+                case "capacity":
+                    return capacity(operands);
+                case "watch":
+                    return watch(operands);
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + args[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE_TEXT);
+            return USAGE;
+        } catch (SteganException | IOException e) {
+            err.println("Error: " + e.getMessage());
+            return FAILED;
+        }
+    }
+
+    // #region Commands
+
+    private int embed(List<String> operands) throws IOException, SteganException {
+        if (operands.size() < 2)
+            throw new IllegalArgumentException("embed needs a file and at least one carrier.");
+        File file = resolve(operands.get(0));
+        if (!file.isFile())
+            throw new IllegalArgumentException("Not a file: " + file);
+        backend.selectFile(file);
+        backend.addCarriers(expand(operands.subList(1, operands.size())));
+        File location = backend.run(progressListener());
+        out.println(location.getPath());
+        return OK;
+    }
+
+    private int extract(List<String> operands) throws IOException, SteganException {
+        if (operands.isEmpty())
+            throw new IllegalArgumentException("extract needs at least one carrier.");
+        backend.switchMode();
+        backend.addCarriers(expand(operands));
+        File location = backend.run(progressListener());
+        out.println(location.getPath());
+        return OK;
+    }
+
+    private int probe(List<String> operands) throws SteganException {
+        if (operands.isEmpty())
+            throw new IllegalArgumentException("probe needs at least one carrier or directory.");
+        for (String operand : operands) {
+            File file = resolve(operand);
+            if (file.isDirectory()) {
+                for (Map.Entry<File, CarrierHeader> entry : backend.probeDirectory(file).entrySet())
+                    printHeader(entry.getKey(), entry.getValue());
+            } else {
+                CarrierHeader header = backend.probe(file);
+                if (header != null)
+                    printHeader(file, header);
+            }
+        }
+        return OK;
+    }
+
+    private int capacity(List<String> operands) {
+        if (operands.isEmpty())
+            throw new IllegalArgumentException("capacity needs at least one carrier or directory.");
+        long total = 0;
+        for (File carrier : expand(operands)) {
+            long capacity;
+            try {
+                capacity = Math.max(0, backend.capacityOf(carrier));
+            } catch (IOException | SteganException e) {
+                // Not an image, it can hold nothing
+                capacity = 0;
+            }
+            total += capacity;
+            out.println(capacity + "\t" + carrier.getPath());
+        }
+        out.println(total + "\ttotal");
+        return OK;
+    }
+
+    private int watch(List<String> operands) throws IOException {
+        if (operands.size() != 1)
+            throw new IllegalArgumentException("watch needs exactly one spool directory.");
+        IngestService service = new IngestService(resolve(operands.get(0)).toPath(), jobOptions, jobs,
+                queueCapacity, out);
+        // Stop on Ctrl-C by interrupting the service, and give its jobs time to clean up
+        Thread caller = Thread.currentThread();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            caller.interrupt();
+            try {
+                stopped.await(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // Exit without waiting
+            }
+        }));
+        try {
+            service.run();
+        } catch (InterruptedException e) {
+            // Stopped
+        } finally {
+            stopped.countDown();
+        }
+        return OK;
+    }
+
+    // #endregion
+
+    // #region Helper functions
+
+    // Applies the options and returns the remaining operands
+    private List<String> parseOptions(List<String> args) {
+        List<String> operands = new ArrayList<String>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            int start = i;
+            switch (arg) {
+                case "--threads":
+                    backend.setParallelism(parseNumber(arg, args, ++i));
+                    break;
+                case "--memory":
+                    backend.setMemoryBudget((long) parseNumber(arg, args, ++i) << 20);
+                    break;
+                case "--bits":
+                    bits = parseNumber(arg, args, ++i);
+                    break;
+                case "--rgb":
+                    alpha = false;
+                    break;
+                case "--level":
+                    int level = parseNumber(arg, args, ++i);
+                    backend.setCodec(level == 0 ? PayloadCodec.NONE : new DeflateCodec(level));
+                    break;
+                case "--format":
+                    formatName = parseText(arg, args, ++i);
+                    break;
+                case "--png-level":
+                    pngTuned = true;
+                    pngOptions = pngOptions.withLevel(parseChoice(arg, args, ++i, PngOptions.Level.class));
+                    break;
+                case "--png-filter":
+                    pngTuned = true;
+                    pngOptions = pngOptions.withFilter(parseChoice(arg, args, ++i, PngOptions.Filter.class));
+                    break;
+                case "--passphrase-file":
+                    File passphraseFile = resolve(parseText(arg, args, ++i));
+                    backend.setPassphrase(readPassphrase(passphraseFile));
+                    // Jobs resolve paths against their spool, so pass the file on in full
+                    jobOptions.add(arg);
+                    jobOptions.add(passphraseFile.getAbsolutePath());
+                    continue;
+                case "--output":
+                    backend.setOutputDirectory(resolve(parseText(arg, args, ++i)));
+                    // A watch chooses the output of its jobs
+                    continue;
+                case "--progress":
+                    progress = true;
+                    break;
+                case "--no-resume":
+                    backend.setResumable(false);
+                    break;
+                case "--jobs":
+                    jobs = parseNumber(arg, args, ++i);
+                    continue;
+                case "--queue":
+                    queueCapacity = parseNumber(arg, args, ++i);
+                    continue;
+                default:
+                    if (arg.startsWith("--"))
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    operands.add(arg);
+                    continue;
+            }
+            jobOptions.addAll(args.subList(start, i + 1));
+        }
+        backend.setDensity(Density.of(bits, alpha));
+        CarrierFormat format = CarrierFormat.forName(formatName);
+        if (format == null)
+            throw new IllegalArgumentException("Unknown format: " + formatName);
+        if (format instanceof PngFormat)
+            format = new PngFormat(pngOptions);
+        else if (pngTuned)
+            throw new IllegalArgumentException("--png-level and --png-filter only apply to PNG output.");
+        backend.setFormat(format);
+        return operands;
+    }
+
+    private static String parseText(String option, List<String> args, int index) {
+        if (index >= args.size())
+            throw new IllegalArgumentException(option + " needs a value.");
+        return args.get(index);
+    }
+
+    private static int parseNumber(String option, List<String> args, int index) {
+        if (index >= args.size())
+            throw new IllegalArgumentException(option + " needs a value.");
+        try {
+            return Integer.parseInt(args.get(index));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " needs a number: " + args.get(index));
+        }
+    }
+
+    private static <E extends Enum<E>> E parseChoice(String option, List<String> args, int index, Class<E> type) {
+        if (index >= args.size())
+            throw new IllegalArgumentException(option + " needs a value.");
+        try {
+            return Enum.valueOf(type, args.get(index).toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(option + " does not accept: " + args.get(index));
+        }
+    }
+
+    // Reads the first line of a file, so the passphrase stays out of the process list
+    private static char[] readPassphrase(File file) {
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty() || lines.get(0).isEmpty())
+                throw new IllegalArgumentException("Passphrase file is empty: " + file);
+            return lines.get(0).toCharArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read passphrase file: " + file);
+        }
+    }
+
+    private File resolve(String path) {
+        File file = new File(path);
+        return baseDirectory == null || file.isAbsolute() ? file : new File(baseDirectory, path);
+    }
+
+    // Expands directories to the files directly inside them, skipping dot files
+    // such as the journals of unfinished embeds
+    private File[] expand(List<String> operands) {
+        List<File> files = new ArrayList<File>();
+        for (String operand : operands) {
+            File file = resolve(operand);
+            if (file.isDirectory()) {
+                File[] children = file.listFiles(child -> child.isFile() && !child.getName().startsWith("."));
+                if (children == null)
+                    throw new IllegalArgumentException("Cannot list directory: " + file);
+                Arrays.sort(children);
+                files.addAll(Arrays.asList(children));
+            } else if (file.isFile()) {
+                files.add(file);
+            } else {
+                throw new IllegalArgumentException("No such carrier: " + file);
+            }
+        }
+        return files.toArray(new File[0]);
+    }
+
+    private ProgressListener progressListener() {
+        if (!progress)
+            return null;
+        return (JobProgress update) -> {
+            if (update.getCarrier() == null) {
+                err.println(update);
+                return;
+            }
+            // Per-carrier timings show how much of the job the output format costs
+            err.println(update + "\t" + update.getCarrier().getName() + " in "
+                    + update.getCarrierNanos() / 1_000_000 + " ms, encode " + update.getEncodeNanos() / 1_000_000
+                    + " ms");
+        };
+    }
+
+    private void printHeader(File carrier, CarrierHeader header) {
+        // Encrypted data keeps its name sealed, so only the flag shows
+        String name = header.isEncrypted() ? "-" : header.getFullName();
+        out.println(carrier.getPath() + "\t" + name + "\tpart " + header.getFileId() + "\tbytes "
+                + header.getSliceOffset() + "-" + (header.getSliceOffset() + header.getSliceLength()) + " of "
+                + header.getByteLength() + (header.isEncrypted() ? "\tencrypted" : ""));
+    }
+
+    // #endregion
+}
@@ -0,0 +1,282 @@
+package steganosaurus.CLI;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import steganosaurus.Backend.CarrierEncoder;
+
+/**
+ * Runs jobs dropped into a spool directory until interrupted, without a GUI
+ * round trip per job. Each job is a {@link JobManifest}, run as one command on
+ * its own backend.
+ *
+ * A manifest is claimed by moving it into {@code running/}, numbered if a job
+ * of the same name is already running there. Finished jobs write their outputs
+ * to {@code done/<job>/}, and their manifest and log go next to it, so the
+ * outputs can be the carriers of a later job. Failed jobs leave no
+ * partial outputs behind, only their manifest and log in {@code failed/}.
+ * Jobs still in {@code running/} when the service stopped are run again on the
+ * next start.
+ *
+ * New manifests are queued in a bounded queue for a fixed pool of workers.
+ * When the queue is full the watcher stops taking events until a worker frees
+ * a slot, and rescans the spool if events were lost meanwhile. Manifests should
+ * be written elsewhere and moved into the spool, so a half written manifest is
+ * never picked up.
+ */
+public class IngestService {
+
+    // Default number of jobs run at once
+    public static final int DEFAULT_JOBS = 2;
+    // Default number of jobs waiting for a worker
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+    // Time running jobs get to cancel when the service stops
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+
+    private final Path spool;
+    private final Path running;
+    private final Path done;
+    private final Path failed;
+    private final List<String> jobOptions = new ArrayList<String>();
+    private final int jobs;
+    private final BlockingQueue<Path> queue;
+    // Manifests queued but not yet claimed, so a rescan does not queue them twice
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+    private final PrintStream log;
+
+    /**
+     * Constructs an IngestService. Jobs share the cores and the default memory
+     * budget between them unless the options say otherwise.
+     *
+     * @param spool         the directory manifests are dropped into
+     * @param options       command line options applied to every job before
+     *                      the manifest's own
+     * @param jobs          the number of jobs run at once
+     * @param queueCapacity the number of jobs waiting for a worker
+     * @param log           the stream a line per finished job is written to
+     */
+    public IngestService(Path spool, List<String> options, int jobs, int queueCapacity, PrintStream log) {
+        if (!Files.isDirectory(spool))
+            throw new IllegalArgumentException("Not a directory: " + spool);
+        if (jobs < 1)
+            throw new IllegalArgumentException("Jobs must be at least 1: " + jobs);
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + queueCapacity);
+        this.spool = spool.toAbsolutePath();
+        running = this.spool.resolve("running");
+        done = this.spool.resolve("done");
+        failed = this.spool.resolve("failed");
+        this.jobs = jobs;
+        queue = new ArrayBlockingQueue<Path>(queueCapacity);
+        this.log = log;
+        jobOptions.add("--threads");
+        jobOptions.add(Integer.toString(Math.max(1, CarrierEncoder.DEFAULT_PARALLELISM / jobs)));
+        jobOptions.add("--memory");
+        jobOptions.add(Long.toString(Math.max(1, (CarrierEncoder.DEFAULT_MEMORY_BUDGET >> 20) / jobs)));
+        jobOptions.addAll(options);
+    }
+
+    /**
+     * Watches the spool and runs its jobs until the calling thread is
+     * interrupted. Running jobs are cancelled on the way out and run again on
+     * the next start.
+     *
+     * @throws IOException          if the spool cannot be watched or listed
+     * @throws InterruptedException when the service is stopped
+     */
+    public void run() throws IOException, InterruptedException {
+        Files.createDirectories(running);
+        Files.createDirectories(done);
+        Files.createDirectories(failed);
+        recover();
+        ExecutorService workers = Executors.newFixedThreadPool(jobs);
+        try (WatchService watcher = spool.getFileSystem().newWatchService()) {
+            for (int i = 0; i < jobs; i++)
+                workers.execute(this::work);
+            spool.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            // Scan after registering, so a manifest cannot slip in between
+            scan();
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean overflowed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        overflowed = true;
+                    else
+                        offer(spool.resolve((Path) event.context()));
+                }
+                if (overflowed)
+                    scan();
+                if (!key.reset())
+                    throw new IOException("The spool directory is no longer accessible: " + spool);
+            }
+        } finally {
+            stop(workers);
+        }
+    }
+
+    // #region Helper functions
+
+    // Moves manifests left running by a stopped service back into the spool
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(running, "*" + JobManifest.EXTENSION)) {
+            for (Path manifest : entries) {
+                try {
+                    Files.move(manifest, spool.resolve(manifest.getFileName()));
+                } catch (FileAlreadyExistsException e) {
+                    log.println("skipped\t" + manifest.getFileName() + "\ta newer manifest has the same name");
+                }
+            }
+        }
+    }
+
+    // Queues every manifest in the spool, oldest name first
+    private void scan() throws IOException, InterruptedException {
+        List<Path> manifests = new ArrayList<Path>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(spool, "*" + JobManifest.EXTENSION)) {
+            for (Path manifest : entries)
+                manifests.add(manifest);
+        }
+        Collections.sort(manifests);
+        for (Path manifest : manifests)
+            offer(manifest);
+    }
+
+    // Blocks while the queue is full, which holds back the watcher
+    private void offer(Path manifest) throws InterruptedException {
+        if (!JobManifest.isManifest(manifest) || !Files.isRegularFile(manifest))
+            return;
+        if (pending.add(manifest))
+            queue.put(manifest);
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                Path manifest = queue.take();
+                try {
+                    process(manifest);
+                } catch (IOException | RuntimeException e) {
+                    // A worker outlives any one job, or the queue would run short of consumers
+                    log.println("error\t" + manifest.getFileName() + "\t" + e.getMessage());
+                } finally {
+                    pending.remove(manifest);
+                }
+            }
+        } catch (InterruptedException e) {
+            // The service is stopping
+        }
+    }
+
+    private void process(Path manifest) throws IOException {
+        String name = JobManifest.jobName(manifest);
+        Path claimed;
+        try {
+            // Numbered if a job of the same name is still running
+            claimed = running.resolve(moveUnique(manifest, running, name) + JobManifest.EXTENSION);
+        } catch (NoSuchFileException e) {
+            // Withdrawn, or claimed by another service on the same spool
+            return;
+        }
+        // Claimed, so a new manifest of the same name can be queued while this one runs
+        pending.remove(manifest);
+        Path output = createUnique(done, name);
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        int status;
+        try (PrintStream jobLog = new PrintStream(report, true, StandardCharsets.UTF_8)) {
+            try {
+                String[] args = JobManifest.read(claimed).toArguments(jobOptions, output.toFile());
+                // Relative paths in the manifest are relative to the spool
+                status = new CommandLine(jobLog, jobLog, spool.toFile()).run(args);
+            } catch (IOException | RuntimeException e) {
+                jobLog.println("Error: " + e.getMessage());
+                status = CommandLine.FAILED;
+            }
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            // Cancelled by a stop, leave the manifest to be run again
+            deleteTree(output);
+            return;
+        }
+        if (status == CommandLine.OK) {
+            String stem = moveUnique(claimed, done, output.getFileName().toString());
+            Files.write(done.resolve(stem + ".log"), report.toByteArray());
+            log.println("done\t" + name + "\t" + output);
+        } else {
+            deleteTree(output);
+            String stem = moveUnique(claimed, failed, name);
+            Path failure = failed.resolve(stem + ".log");
+            Files.write(failure, report.toByteArray());
+            log.println("failed\t" + name + "\t" + failure);
+        }
+    }
+
+    // Cancels running jobs and waits for them to clean up
+    private void stop(ExecutorService workers) throws InterruptedException {
+        boolean interrupted = Thread.interrupted();
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    // Creates a directory named after the job, numbered if the name is taken
+    private static Path createUnique(Path parent, String name) throws IOException {
+        for (int i = 0;; i++) {
+            try {
+                return Files.createDirectory(parent.resolve(i == 0 ? name : name + "-" + i));
+            } catch (FileAlreadyExistsException e) {
+                // Taken by an earlier job of the same name
+            }
+        }
+    }
+
+    // Moves a manifest into a directory, numbered if the name is taken, and
+    // returns the name it was given without the extension
+    private static String moveUnique(Path manifest, Path parent, String name) throws IOException {
+        for (int i = 0;; i++) {
+            String stem = i == 0 ? name : name + "-" + i;
+            try {
+                Files.move(manifest, parent.resolve(stem + JobManifest.EXTENSION));
+                return stem;
+            } catch (FileAlreadyExistsException e) {
+                // Taken by an earlier job of the same name
+            }
+        }
+    }
+
+    private static void deleteTree(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.deleteIfExists(path);
+        }
+    }
+
+    // #endregion
+}
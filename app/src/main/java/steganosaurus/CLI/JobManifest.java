@@ -0,0 +1,127 @@
+package steganosaurus.CLI;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * A job dropped into the spool directory of an {@link IngestService}: a Java
+ * properties file naming the payload, the carriers and the options of one embed
+ * or extract run.
+ *
+ * <pre>
+ * mode=embed
+ * payload=reports/q3.pdf
+ * carriers=photos/a.png, photos/b.png
+ * bits=4
+ * passphrase-file=secret.txt
+ * </pre>
+ *
+ * The mode is embed, the default, or extract, which takes no payload. Carriers
+ * are files or directories separated by commas. Every other key is a command
+ * line option without its dashes, with true and false for switches. The output
+ * directory is chosen by the service.
+ */
+public final class JobManifest {
+
+    // File name extension of manifests
+    public static final String EXTENSION = ".job";
+
+    private final Properties properties;
+
+    private JobManifest(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Reads a manifest.
+     *
+     * @param file the manifest file
+     * @return the manifest
+     * @throws IOException if the file cannot be read
+     */
+    public static JobManifest read(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return new JobManifest(properties);
+    }
+
+    /**
+     * Checks whether a file name is that of a manifest.
+     *
+     * @param file the file
+     * @return true if the name ends with {@link #EXTENSION}
+     */
+    public static boolean isManifest(Path file) {
+        return file.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    /**
+     * Gets the name of the job a manifest describes, its file name without the
+     * extension.
+     *
+     * @param file the manifest file
+     * @return the job name
+     */
+    public static String jobName(Path file) {
+        String name = file.getFileName().toString();
+        return isManifest(file) ? name.substring(0, name.length() - EXTENSION.length()) : name;
+    }
+
+    /**
+     * Builds the command line that runs the job.
+     *
+     * @param defaults options applied before the manifest's own, which override
+     *                 them
+     * @param output   the directory the job writes to
+     * @return the command and its arguments
+     * @throws IllegalArgumentException if the manifest is incomplete or sets
+     *                                  the output directory
+     */
+    public String[] toArguments(List<String> defaults, File output) {
+        String mode = properties.getProperty("mode", "embed").trim();
+        if (!mode.equals("embed") && !mode.equals("extract"))
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        List<String> args = new ArrayList<String>();
+        args.add(mode);
+        args.addAll(defaults);
+        args.add("--output");
+        args.add(output.getPath());
+        for (String key : new TreeSet<String>(properties.stringPropertyNames())) {
+            if (key.equals("mode") || key.equals("payload") || key.equals("carriers"))
+                continue;
+            if (key.equals("output"))
+                throw new IllegalArgumentException("The output directory is chosen by the watch service.");
+            String value = properties.getProperty(key).trim();
+            if (value.equals("false"))
+                continue;
+            args.add("--" + key);
+            if (!value.equals("true"))
+                args.add(value);
+        }
+        String payload = properties.getProperty("payload", "").trim();
+        if (mode.equals("embed")) {
+            if (payload.isEmpty())
+                throw new IllegalArgumentException("An embed job needs a payload.");
+            args.add(payload);
+        } else if (!payload.isEmpty()) {
+            throw new IllegalArgumentException("An extract job takes no payload.");
+        }
+        int operands = args.size();
+        for (String carrier : properties.getProperty("carriers", "").split(","))
+            if (!carrier.isBlank())
+                args.add(carrier.trim());
+        if (args.size() == operands)
+            throw new IllegalArgumentException("A job needs at least one carrier.");
+        return args.toArray(new String[0]);
+    }
+}
@@ -1,13 +1,17 @@
 package steganosaurus.Controllers;
 
 import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.JPasswordField;
 
-import steganosaurus.Backend.SteganException;
 import steganosaurus.GUI.MainWindow;
 import java.io.File;
+import java.util.Arrays;
 
 public class BackendActions extends Actions<BackendEnum> {
 
+    private static BackendTask activeTask = null; // The job currently running, shared by every Run control
+
     private int fileRepIndex = -1; // Index of the file represented by the button in the GUI. -1 unless modified by
     // a constructor.
 
@@ -35,7 +39,7 @@ public class BackendActions extends Actions<BackendEnum> {
     public void execute() {
         switch (actionType) {
             case SWITCH_MODE:
-                // Logic to switch modes
+                MainWindow.instance.getBackend().switchMode();
                 break;
             case SELECT_FILE:
                 File[] selectedFiles = openFileChooser(false);
@@ -62,14 +66,19 @@ public class BackendActions extends Actions<BackendEnum> {
                 MainWindow.instance.getBackend().clearCarriers();
                 break;
             case RUN:
-                try {
-                    File location = MainWindow.instance.getBackend().run();
-                    MainWindow.instance.showSuccessDialog(location, MainWindow.instance.getBackend().getMode());
-                } catch (SteganException e) {
-                    MainWindow.instance.showErrorDialog("Error", e.getMessage());
-                } catch (Exception e) {
-                    MainWindow.instance.showErrorDialog("Error", "An unexpected error occurred: " + e.getMessage());
+                // Run doubles as Cancel while a job is active
+                if (activeTask != null && !activeTask.isDone()) {
+                    activeTask.requestCancel();
+                    break;
                 }
+                char[] passphrase = askPassphrase();
+                if (passphrase == null)
+                    break;
+                MainWindow.instance.getBackend().setPassphrase(passphrase);
+                Arrays.fill(passphrase, '\0');
+                activeTask = new BackendTask();
+                MainWindow.instance.setRunning(true);
+                activeTask.execute();
                 break;
             default:
                 throw new UnsupportedOperationException("Action not supported: " + actionType);
@@ -97,6 +106,21 @@ public class BackendActions extends Actions<BackendEnum> {
         return null;
     }
 
+    /**
+     * Asks for the passphrase to encrypt or decrypt with.
+     *
+     * @return the passphrase, empty for none, or null if the run was cancelled
+     */
+    private char[] askPassphrase() {
+        JPasswordField field = new JPasswordField(24);
+        int choice = JOptionPane.showConfirmDialog(MainWindow.instance.getMainFrame(), new Object[] {
+                "Passphrase (leave empty for none):", field }, "Passphrase", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION)
+            return null;
+        return field.getPassword();
+    }
+
     // #endregion
 
 }
@@ -0,0 +1,84 @@
+package steganosaurus.Controllers;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+
+import steganosaurus.Backend.JobProgress;
+import steganosaurus.Backend.SteganException;
+import steganosaurus.GUI.MainWindow;
+
+/**
+ * Runs the backend off the event dispatch thread, publishing progress to the
+ * status panel as carriers finish and reporting the outcome once the job ends.
+ */
+public class BackendTask extends SwingWorker<File, JobProgress> {
+
+    private volatile Thread worker;
+    private volatile boolean cancelRequested = false;
+    // Set on the event dispatch thread once the outcome is shown
+    private boolean finished = false;
+
+    /**
+     * Asks the running job to stop. The job winds down in the background and the
+     * Run button comes back once it has.
+     */
+    public void requestCancel() {
+        cancelRequested = true;
+        Thread running = worker;
+        if (running != null)
+            running.interrupt();
+    }
+
+    @Override
+    protected File doInBackground() throws Exception {
+        worker = Thread.currentThread();
+        try {
+            if (cancelRequested)
+                throw new InterruptedException("Cancelled before starting.");
+            return MainWindow.instance.getBackend().run(this::publish);
+        } finally {
+            worker = null;
+            // Clear any interrupt that arrived after the job finished
+            Thread.interrupted();
+        }
+    }
+
+    @Override
+    protected void process(List<JobProgress> chunks) {
+        // Chunks are delivered on a timer and can arrive after the job has ended
+        if (finished)
+            return;
+        // Only the latest snapshot matters
+        JobProgress latest = chunks.get(chunks.size() - 1);
+        MainWindow.instance.setStatus("Running: " + latest);
+    }
+
+    @Override
+    protected void done() {
+        finished = true;
+        MainWindow.instance.setRunning(false);
+        if (cancelRequested) {
+            MainWindow.instance.setStatus("Cancelled");
+            return;
+        }
+        // The backend posts its final status too, but a late progress chunk may
+        // have replaced it, so it is set again here
+        try {
+            File location = get();
+            MainWindow.instance.setStatus("Done");
+            MainWindow.instance.showSuccessDialog(location, MainWindow.instance.getBackend().getMode());
+        } catch (ExecutionException e) {
+            MainWindow.instance.setStatus("Idle");
+            Throwable cause = e.getCause();
+            if (cause instanceof SteganException)
+                MainWindow.instance.showErrorDialog("Error", cause.getMessage());
+            else
+                MainWindow.instance.showErrorDialog("Error", "An unexpected error occurred: " + cause.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
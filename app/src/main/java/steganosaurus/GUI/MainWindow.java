@@ -7,6 +7,7 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 
 import steganosaurus.Controllers.*;
+import steganosaurus.Backend.BackendListener;
 import steganosaurus.Backend.MainBackend;
 import steganosaurus.Settings.Keybind;
 import java.io.File;
@@ -18,7 +19,7 @@ import java.util.HashMap;
  * It initializes the main frame, menu bar, file pane, and various controls for
  * user interaction.
  */
-public class MainWindow {
+public class MainWindow implements BackendListener {
 
     /**
      * Singleton instance of the MainWindow.
@@ -40,6 +41,7 @@ public class MainWindow {
     private JLabel totalBytesLabel;
     private JLabel neededBytesLabel;
     private JLabel statusInfoLabel;
+    private JButton runButton;
     private HashMap<JMenuItem, Keybind> keybinds;
 
     /**
@@ -54,7 +56,7 @@ public class MainWindow {
         }
         keybinds = new HashMap<JMenuItem, Keybind>();
         // Set up the main frame
-        JFrame mainFrame = new JFrame("Steganosaurus - Encrypt");
+        mainFrame = new JFrame("Steganosaurus - Encrypt");
         mainFrame.setSize(new Dimension(800, 400));
         mainFrame.setMinimumSize(minSize);
         mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -123,7 +125,7 @@ public class MainWindow {
         addButton(bottomCentrePanel, "<html>Add<br/>Carriers</html>", new BackendActions(BackendEnum.ADD_CARRIERS));
         addButton(bottomCentrePanel, "<html>Remove<br/>Carrier</html>", new BackendActions(BackendEnum.REMOVE_CARRIER));
         addButton(bottomCentrePanel, "<html>Clear<br/>Carriers</html>", new BackendActions(BackendEnum.CLEAR_CARRIERS));
-        addButton(bottomCentrePanel, "Run", new BackendActions(BackendEnum.RUN));
+        runButton = addButton(bottomCentrePanel, "Run", new BackendActions(BackendEnum.RUN));
 
         // Add the centre panels to the main frame
         centerPanel.add(topCentrePanel, BorderLayout.CENTER);
@@ -166,6 +168,7 @@ public class MainWindow {
      * 
      * @param fileName the name of the file
      */
+    @Override
     public void setFileName(String fileName) {
         fileLabel.setText(fileName);
     }
@@ -175,6 +178,7 @@ public class MainWindow {
      * 
      * @param fileSize the size of the file
      */
+    @Override
     public void setFileSize(long fileSize) {
         sizeLabel.setText(formatFileSize(fileSize));
     }
@@ -184,6 +188,7 @@ public class MainWindow {
      * 
      * @param totalBytes the total available bytes
      */
+    @Override
     public void setTotalBytes(long totalBytes) {
         totalBytesLabel.setText(formatFileSize(totalBytes));
     }
@@ -193,6 +198,7 @@ public class MainWindow {
      * 
      * @param neededBytes the required bytes
      */
+    @Override
     public void setNeededBytes(long neededBytes) {
         neededBytesLabel.setText(formatFileSize(neededBytes));
     }
@@ -202,8 +208,32 @@ public class MainWindow {
      * 
      * @param status the current status (e.g., "Idle", "Processing", "Completed")
      */
+    @Override
     public void setStatus(String status) {
-        statusInfoLabel.setText(status);
+        // The backend reports status from its worker thread
+        if (SwingUtilities.isEventDispatchThread())
+            statusInfoLabel.setText(status);
+        else
+            SwingUtilities.invokeLater(() -> statusInfoLabel.setText(status));
+    }
+
+    /**
+     * Switches the Run button between starting a job and cancelling it.
+     * 
+     * @param running whether a job is running
+     */
+    public void setRunning(boolean running) {
+        runButton.setText(running ? "Cancel" : "Run");
+    }
+
+    /**
+     * Sets the mode shown in the title of the main frame.
+     * 
+     * @param mode the current mode (e.g., "Encrypt", "Decrypt")
+     */
+    @Override
+    public void setMode(String mode) {
+        mainFrame.setTitle("Steganosaurus - " + mode);
     }
 
     /**
@@ -230,6 +260,7 @@ public class MainWindow {
      * @param fileName the name of the file
      * @param fileSize the size of the file in bytes
      */
+    @Override
     public void addCarrier(String fileName, long fileSize) {
         filePane.addFile(fileName, fileSize);
     }
@@ -239,6 +270,7 @@ public class MainWindow {
      * 
      * @param fileName the name of the file
      */
+    @Override
     public void removeCarrier(int index) {
         filePane.removeButtonAtIndex(index);
     }
@@ -246,6 +278,7 @@ public class MainWindow {
     /**
      * Clears all files from the file pane.
      */
+    @Override
     public void clearCarriers() {
         filePane.removeAllButtons();
     }
@@ -344,13 +377,14 @@ public class MainWindow {
     }
 
     // Add a button to the given panel with the specified name and action
-    private <E extends Enum<E>> void addButton(JPanel panel, String name, Actions<E> actionListener) {
+    private <E extends Enum<E>> JButton addButton(JPanel panel, String name, Actions<E> actionListener) {
         JButton button = new JButton(name);
         button.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         button.setFocusPainted(false);
         button.setFont(buttonFont);
         button.addActionListener(actionListener);
         panel.add(button);
+        return button;
     }
 
     // Add a label pair to the given panel with the specified label text and
@@ -5,11 +5,17 @@
 package steganosaurus;
 
 import javax.swing.UIManager;
+import steganosaurus.CLI.CommandLine;
 import steganosaurus.GUI.MainWindow;
 
 public class Steganosaurus {
 
     public static void main(String[] args) {
+        // Any arguments mean a headless command, skip the GUI entirely
+        if (args.length > 0) {
+            CommandLine.main(args);
+            return;
+        }
         try {
             UIManager.setLookAndFeel("com.sun.java.swing.plaf.windows.WindowsLookAndFeel");
         } catch (Exception e) {